@@ -0,0 +1,62 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * {@link ImportBenchmark} on classic (NetCDF-3) files. These are always
+ * contiguous and only hold the classic types.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ClassicImportBenchmark extends ImportBenchmark {
+
+	@Param({"byte", "char", "short", "int", "float", "double"})
+	public String type;
+	
+	@Param({"2", "3", "4"})
+	public int rank;
+	
+	@Override
+	String format() {
+		return "nc3";
+	}
+	
+	@Override
+	String type() {
+		return type;
+	}
+	
+	@Override
+	int rank() {
+		return rank;
+	}
+	
+	@Override
+	String layout() {
+		return "contiguous";
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.misc.DataBundle;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+/**
+ * Benchmarks of the NetCDF import paths. Throughput benchmarks count the
+ * bytes of NetCDF data they decode in the "bytes" secondary result (bytes
+ * per second, divide by 1048576 for MB/s). Run with -prof gc to see the
+ * allocation rate. {@link ClassicImportBenchmark} and
+ * {@link Netcdf4ImportBenchmark} pick the files. Char variables are read
+ * as characters so their decode is timed rather than the collapse into
+ * strings.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public abstract class ImportBenchmark {
+
+	/** "nc3" or "nc4" */
+	abstract String format();
+	
+	/** the NetCDF type name of the variable */
+	abstract String type();
+	
+	/** the number of dimensions of the variable */
+	abstract int rank();
+	
+	/** a layout SyntheticFiles knows */
+	abstract String layout();
+	
+	private Path dir;
+	private URI uri;
+	private long bytes;
+	private int[] shape;
+	private NetcdfFile file;
+	private Variable var;
+	private Decoder decoder;
+	private long[] dims;
+	private ReadOptions options;
+	private ClassicFormat classic;
+	
+	/**
+	 * Counts the bytes decoded by a benchmark.
+	 */
+	@AuxCounters(AuxCounters.Type.OPERATIONS)
+	@State(Scope.Thread)
+	public static class Counters {
+		
+		public long bytes;
+		
+		@Setup(Level.Iteration)
+		public void clear() {
+			bytes = 0;
+		}
+	}
+	
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		
+		dir = Files.createTempDirectory("zorbage-netcdf-bench");
+		
+		Path path = SyntheticFiles.create(dir, format(), type(), rank(), layout());
+		
+		uri = path.toUri();
+		
+		file = NetcdfFiles.open(path.toString());
+		
+		var = file.findVariable(SyntheticFiles.VARIABLE);
+		
+		shape = var.getShape();
+		
+		bytes = var.getSize() * var.getElementSize();
+		
+		options = new ReadOptions();
+		
+		options.setCollapseCharArrays(false);
+		
+		// null for NetCDF-4 files which then go through netcdf-java
+		
+		classic = ClassicFormat.open(uri);
+		
+		decoder = NetCDF.decoder(var, options);
+		
+		dims = NetCDF.zorbageDims(shape);
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		
+		file.close();
+		
+		if (classic != null)
+			classic.close();
+		
+		try (Stream<Path> paths = Files.walk(dir)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		}
+	}
+
+	@Benchmark
+	public DataBundle readAllDatasets(Counters counters) {
+		
+		counters.bytes += bytes;
+		
+		return NetCDF.readAllDatasets(uri, options);
+	}
+
+	@Benchmark
+	public Object readVar(Counters counters) {
+		
+		counters.bytes += bytes;
+		
+		return NetCDF.readVariable(uri, SyntheticFiles.VARIABLE, new int[shape.length], shape, null, options);
+	}
+
+	@Benchmark
+	public Object importValues(Counters counters) throws IOException {
+		
+		DimensionedDataSource<Object> ds = NetCDF.allocate(decoder.type, dims, options);
+		
+		NetCDF.importValues(var, uri, classic, null, decoder.copier, decoder.type, ds, options);
+		
+		counters.bytes += bytes;
+		
+		return ds;
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	public Object timeToFirstValue() throws IOException {
+		
+		Tuple2<?, DimensionedDataSource<Object>> data =
+				NetCDF.openVariable(uri, SyntheticFiles.VARIABLE, 4);
+		
+		try {
+			
+			Object value = decoder.type.allocate();
+			
+			data.b().rawData().get(0, value);
+			
+			return value;
+			
+		} finally {
+			
+			((TileCachedStorage<?,?>) data.b().rawData()).close();
+		}
+	}
+}
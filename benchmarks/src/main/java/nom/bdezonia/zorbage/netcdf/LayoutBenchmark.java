@@ -0,0 +1,149 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.sampling.IntegerIndex;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * Compares the two ways of moving decoded NetCDF values into zorbage
+ * storage: remapping every value's coordinates through an IntegerIndex (how
+ * importValues used to work) and copying whole rows at positions stepped by
+ * a precomputed {@link LayoutTransform}. No file is involved; the values
+ * come from an in memory float array shaped like a rank 3 or rank 4 grid.
+ * The row copying uses the importer's own float copier and storage.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xmx4g"})
+public class LayoutBenchmark {
+
+	@Param({"64x512x512", "8x16x256x256"})
+	public String shape;
+	
+	private int[] netcdfShape;
+	private float[] values;
+	private long[] dims;
+	private DimensionedDataSource<Object> ds;
+	private RowCopier<Object> copier;
+	
+	@SuppressWarnings("unchecked")
+	@Setup
+	public void setup() throws IOException {
+		
+		String[] parts = shape.split("x");
+		
+		netcdfShape = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			netcdfShape[i] = Integer.parseInt(parts[i]);
+		}
+		
+		dims = NetCDF.zorbageDims(netcdfShape);
+		
+		int count = 1;
+		for (int i = 0; i < netcdfShape.length; i++) {
+			count *= netcdfShape[i];
+		}
+		
+		values = new float[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = i;
+		}
+		
+		ds = NetCDF.allocate(G.FLT.construct(), dims, new ReadOptions());
+		
+		copier = (RowCopier<Object>) NetCDF.rowCopier("float");
+	}
+
+	@Benchmark
+	public Object perElementIndex() {
+		
+		int rank = netcdfShape.length;
+		
+		IntegerIndex idx = new IntegerIndex(rank);
+		
+		int[] pos = new int[rank];
+		
+		Float32Member val = G.FLT.construct();
+		
+		for (int i = 0; i < values.length; i++) {
+			
+			// zorbage dim k is netcdf dim rank-1-k and zorbage dim 1 is Y flipped
+			
+			for (int k = 0; k < rank; k++) {
+				int j = rank - 1 - k;
+				long p = (k == 1) ? (netcdfShape[j] - 1 - pos[j]) : pos[j];
+				idx.set(k, p);
+			}
+			
+			val.setV(values[i]);
+			
+			ds.set(idx, val);
+			
+			for (int j = rank - 1; j >= 0; j--) {
+				if (++pos[j] < netcdfShape[j])
+					break;
+				pos[j] = 0;
+			}
+		}
+		
+		return ds;
+	}
+
+	@Benchmark
+	public Object layoutTransform() throws IOException {
+		
+		// compiled once per variable in importValues
+		
+		LayoutTransform layout = new LayoutTransform(netcdfShape);
+		
+		NetCDF.copyChunk(null, values, values.length, new int[netcdfShape.length], netcdfShape, layout,
+							copier, G.FLT.construct(), ds.rawData());
+		
+		return ds;
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import org.openjdk.jmh.annotations.Param;
+
+/**
+ * {@link ImportBenchmark} on NetCDF-4 files. Covers every NetCDF type the
+ * importer has an algebra for, stored contiguously, chunked, and chunked
+ * with deflate. Writing and reading these files needs the native netCDF-C
+ * library.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class Netcdf4ImportBenchmark extends ImportBenchmark {
+
+	@Param({"byte", "ubyte", "short", "ushort", "int", "uint", "long", "ulong",
+			"float", "double", "char", "String", "enum1", "enum2", "enum4"})
+	public String type;
+	
+	@Param({"2", "3", "4"})
+	public int rank;
+	
+	@Param({"contiguous", "chunked", "deflate"})
+	public String layout;
+	
+	@Override
+	String format() {
+		return "nc4";
+	}
+	
+	@Override
+	String type() {
+		return type;
+	}
+	
+	@Override
+	int rank() {
+		return rank;
+	}
+	
+	@Override
+	String layout() {
+		return layout;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.EnumTypedef;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.Nc4ChunkingStrategy;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Makes NetCDF files holding one variable named "data" of a chosen type,
+ * rank and layout for the benchmarks to read. Every variable has about four
+ * million values. NetCDF-4 files need the native netCDF-C library.
+ * <p>
+ * The layouts are "contiguous", "chunked" (NetCDF-4 chunks, no filters)
+ * and "deflate" (NetCDF-4 chunks, shuffled and deflated at level 5).
+ * 
+ * @author Barry DeZonia
+ *
+ */
+class SyntheticFiles {
+
+	static final String VARIABLE = "data";
+	
+	private static final String[] DIM_NAMES = {"time", "level", "lat", "lon"};
+	
+	private static final int[][] SHAPES = {
+			{4 * 1024 * 1024},
+			{2048, 2048},
+			{16, 512, 512},
+			{4, 8, 256, 512}
+	};
+	
+	/**
+	 * 
+	 * @param dir The directory to make the file in.
+	 * @param format "nc3" or "nc4".
+	 * @param type A NetCDF type name ("float", "short", "enum1", ...).
+	 * @param rank 1 through 4.
+	 * @param layout "contiguous", "chunked" or "deflate". Only NetCDF-4 files
+	 *   can be chunked.
+	 * @return The path of the new file.
+	 * @throws IOException
+	 */
+	static Path create(Path dir, String format, String type, int rank, String layout) throws IOException {
+		
+		if (rank < 1 || rank > SHAPES.length)
+			throw new IllegalArgumentException("rank must be between 1 and "+SHAPES.length);
+		
+		boolean nc4 = format.equals("nc4");
+		
+		boolean contiguous = layout.equals("contiguous");
+		
+		if (!contiguous && !layout.equals("chunked") && !layout.equals("deflate"))
+			throw new IllegalArgumentException("unknown layout "+layout);
+		
+		if (!contiguous && !nc4)
+			throw new IllegalArgumentException("only NetCDF-4 files can be chunked");
+		
+		DataType dataType = DataType.getType(type);
+		
+		if (dataType == null)
+			throw new IllegalArgumentException("unknown NetCDF type "+type);
+		
+		int[] shape = SHAPES[rank-1];
+		
+		Path path = dir.resolve(format+"-"+type+"-rank"+rank+"-"+layout+".nc");
+		
+		NetcdfFormatWriter.Builder builder;
+		
+		if (nc4) {
+			
+			Nc4Chunking chunking;
+			
+			if (contiguous)
+				chunking = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.none, 0, false);
+			else if (layout.equals("chunked"))
+				chunking = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, 0, false);
+			else
+				chunking = Nc4ChunkingStrategy.factory(Nc4Chunking.Strategy.standard, 5, true);
+			
+			builder = NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4, path.toString(), chunking);
+		}
+		else {
+			
+			builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		}
+		
+		StringBuilder dimString = new StringBuilder();
+		for (int i = 0; i < rank; i++) {
+			String name = DIM_NAMES[DIM_NAMES.length - rank + i];
+			builder.addDimension(name, shape[i]);
+			if (i > 0)
+				dimString.append(' ');
+			dimString.append(name);
+		}
+		
+		if (dataType.isEnum()) {
+			
+			// value v of the ramp is named "v<v>"
+			
+			Map<Integer, String> names = new HashMap<>();
+			for (int v = 0; v < 97; v++) {
+				names.put(v, "v" + v);
+			}
+			
+			builder.getRootGroup().addEnumTypedef(new EnumTypedef(type + "_t", names, dataType));
+			
+			builder.addVariable(VARIABLE, dataType, dimString.toString()).setEnumTypeName(type + "_t");
+		}
+		else {
+			
+			builder.addVariable(VARIABLE, dataType, dimString.toString());
+		}
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			writer.write(writer.findVariable(VARIABLE), values(dataType, shape));
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path;
+	}
+	
+	// a repeating ramp so compression has something realistic to work on
+	
+	private static Array values(DataType dataType, int[] shape) {
+		
+		Array array = Array.factory(dataType, shape);
+		
+		IndexIterator iter = array.getIndexIterator();
+		
+		int i = 0;
+		
+		while (iter.hasNext()) {
+			
+			int v = i++ % 97;
+			
+			if (dataType == DataType.CHAR)
+				iter.setCharNext((char) ('a' + (v % 26)));
+			else if (dataType == DataType.STRING)
+				iter.setObjectNext("s" + v);
+			else if (dataType == DataType.BOOLEAN)
+				iter.setBooleanNext((v & 1) == 1);
+			else
+				iter.setDoubleNext(v);
+		}
+		
+		return array;
+	}
+}
@@ -0,0 +1,279 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import nom.bdezonia.zorbage.algebra.Addition;
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.algebra.ScaleByDouble;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+import ucar.nc2.Variable;
+
+/**
+ * A read only IndexedDataSource that joins one variable from several NetCDF
+ * files end to end along its first (outermost, usually time) NetCDF axis.
+ * Each file is read lazily through its own {@link TileCachedStorage}. At
+ * most a fixed number of files are open at once; the least recently used
+ * one is closed to make room for another.
+ * <p>
+ * Indices are in zorbage order like the data read by
+ * {@link NetCDF#readAllDatasets}. The outer NetCDF axis is the slowest
+ * zorbage axis so for most ranks the files simply follow one another. For
+ * rank 2 variables the outer axis is the Y flipped one and the files run
+ * in reverse.
+ * <p>
+ * Setting a value throws an UnsupportedOperationException.
+ * <p>
+ * Files are leased from the pool given when aggregating, if any, so
+ * reopening a file that was closed to make room is cheap.
+ * <p>
+ * Duplicates open their own files. Closing one closes only its own.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class AggregatedStorage<T extends Algebra<T,U> & Addition<U> & ScaleByDouble<U>, U>
+
+	implements IndexedDataSource<U>, Closeable
+{
+	private final List<URI> files;
+	private final String variableName;
+	private final T algebra;
+	@SuppressWarnings("rawtypes")
+	private final Allocatable type;
+	private final RowCopier<?> copier;
+	private final int maxOpenFiles;
+	private final int maxCachedTiles;
+	private final NetcdfFilePool pool;
+	private final long[] steps;
+	private final int[] innerShape;
+	private final long[] firstStep;
+	private final long totalSteps;
+	private final long stepElements;
+	private final long rowLength;
+	private final boolean flipped;
+	private final LinkedHashMap<Integer, TileCachedStorage<T,U>> open;
+
+	@SuppressWarnings("rawtypes")
+	AggregatedStorage(List<URI> files, String variableName, long[] steps, int[] innerShape,
+						T algebra, Allocatable type, RowCopier<?> copier,
+						int maxOpenFiles, int maxCachedTiles, NetcdfFilePool pool)
+	{
+		this.files = new ArrayList<>(files);
+		this.variableName = variableName;
+		this.algebra = algebra;
+		this.type = type;
+		this.copier = copier;
+		this.maxOpenFiles = maxOpenFiles;
+		this.maxCachedTiles = maxCachedTiles;
+		this.pool = pool;
+		this.steps = steps.clone();
+		this.innerShape = innerShape.clone();
+		
+		// firstStep[f] = the first outer NetCDF index held by file f
+		
+		this.firstStep = new long[steps.length + 1];
+		for (int f = 0; f < steps.length; f++) {
+			firstStep[f+1] = firstStep[f] + steps[f];
+		}
+		this.totalSteps = firstStep[steps.length];
+		
+		long n = 1;
+		for (int i = 0; i < innerShape.length; i++) {
+			n *= innerShape[i];
+		}
+		this.stepElements = n;
+		this.rowLength = (innerShape.length > 0) ? innerShape[innerShape.length-1] : 1;
+		this.flipped = (innerShape.length == 1);
+		
+		this.open = new LinkedHashMap<Integer, TileCachedStorage<T,U>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, TileCachedStorage<T,U>> eldest) {
+				if (size() <= AggregatedStorage.this.maxOpenFiles)
+					return false;
+				try {
+					eldest.getValue().close();
+				} catch (IOException e) {
+					System.out.println("Exception occurred : " + e);
+				}
+				return true;
+			}
+		};
+	}
+	
+	@Override
+	public AggregatedStorage<T,U> duplicate() {
+		return new AggregatedStorage<T,U>(files, variableName, steps, innerShape,
+											algebra, type, copier, maxOpenFiles, maxCachedTiles, pool);
+	}
+
+	@Override
+	public void set(long index, U value) {
+		throw new UnsupportedOperationException("Aggregated NetCDF data cannot be modified");
+	}
+
+	@Override
+	public synchronized void get(long index, U value) {
+
+		if (index < 0 || index >= size())
+			throw new IllegalArgumentException("index out of bounds");
+		
+		long step;
+		long within;
+		
+		if (flipped) {
+			
+			// zorbage rows count the outer netcdf axis backwards
+			
+			long row = index / rowLength;
+			within = index - row * rowLength;
+			step = totalSteps - 1 - row;
+		}
+		else {
+			
+			step = index / stepElements;
+			within = index - step * stepElements;
+		}
+		
+		int f = fileOf(step);
+		
+		long localStep = step - firstStep[f];
+		
+		long localIndex;
+		
+		if (flipped) {
+			localIndex = (steps[f] - 1 - localStep) * rowLength + within;
+		}
+		else {
+			localIndex = localStep * stepElements + within;
+		}
+		
+		source(f).get(localIndex, value);
+	}
+
+	@Override
+	public long size() {
+		return totalSteps * stepElements;
+	}
+
+	@Override
+	public StorageConstruction storageType() {
+		return StorageConstruction.MEM_VIRTUAL;
+	}
+
+	@Override
+	public boolean accessWithOneThread() {
+		return false;
+	}
+
+	/**
+	 * Close every file this data source has open.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		IOException failure = null;
+		for (TileCachedStorage<T,U> storage : open.values()) {
+			try {
+				storage.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		open.clear();
+		if (failure != null)
+			throw failure;
+	}
+	
+	/**
+	 * The number of files joined together.
+	 */
+	public int numFiles() {
+		return files.size();
+	}
+	
+	/**
+	 * The number of files currently open.
+	 */
+	public synchronized int openFiles() {
+		return open.size();
+	}
+	
+	// the file holding an outer netcdf index
+	
+	private int fileOf(long step) {
+		int f = Arrays.binarySearch(firstStep, step);
+		if (f < 0)
+			return -f - 2;
+		// files with no steps share a start with the next one
+		while (firstStep[f+1] == step)
+			f++;
+		return f;
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private TileCachedStorage<T,U> source(int f) {
+		
+		TileCachedStorage<T,U> storage = open.get(f);
+		
+		if (storage != null)
+			return storage;
+		
+		URI uri = files.get(f);
+		
+		try {
+			
+			NetcdfFilePool.Lease lease = (pool == null) ? NetcdfFilePool.unpooled(uri) : pool.acquire(uri);
+			
+			Variable var = lease.file().findVariable(variableName);
+			
+			if (var == null) {
+				lease.close();
+				throw new IllegalStateException("Variable "+variableName+" has gone from "+uri);
+			}
+			
+			storage = new TileCachedStorage(lease, var, algebra, type, copier, maxCachedTiles);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalStateException("Could not open "+uri+" : "+e.getMessage(), e);
+		}
+		
+		open.put(f, storage);
+		
+		return storage;
+	}
+}
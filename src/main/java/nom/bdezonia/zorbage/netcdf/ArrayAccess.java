@@ -0,0 +1,302 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.type.character.CharMember;
+import nom.bdezonia.zorbage.type.integer.int1.UnsignedInt1Member;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int32.SignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int32.UnsignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int64.SignedInt64Member;
+import nom.bdezonia.zorbage.type.integer.int64.UnsignedInt64Member;
+import nom.bdezonia.zorbage.type.integer.int8.SignedInt8Member;
+import nom.bdezonia.zorbage.type.integer.int8.UnsignedInt8Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * Moves single values between a zorbage member and a primitive java array
+ * or typed nio buffer. There is one implementation per zorbage type that has
+ * a primitive array form (the array type NetCDF reads that type into) and
+ * one per type that has a buffer form.
+ * <p>
+ * Unsigned values are kept as their raw bits, so a uint8 of 200 is the byte
+ * -56. This is exactly what NetCDF hands back for unsigned variables. The
+ * zorbage unsigned setters that take a primitive mask off the sign
+ * extension so the value read back is 200 again.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+abstract class ArrayAccess {
+
+	abstract void get(Object array, int pos, Object value);
+	
+	abstract void set(Object array, int pos, Object value);
+	
+	// the java array type values of type are kept in or null if there is none
+	
+	@SuppressWarnings("rawtypes")
+	static Class<?> component(Allocatable type) {
+		
+		if (type instanceof Float32Member)
+			return float.class;
+		if (type instanceof Float64Member)
+			return double.class;
+		if (type instanceof SignedInt8Member || type instanceof UnsignedInt8Member)
+			return byte.class;
+		if (type instanceof SignedInt16Member || type instanceof UnsignedInt16Member)
+			return short.class;
+		if (type instanceof SignedInt32Member || type instanceof UnsignedInt32Member)
+			return int.class;
+		if (type instanceof SignedInt64Member || type instanceof UnsignedInt64Member)
+			return long.class;
+		if (type instanceof CharMember)
+			return char.class;
+		if (type instanceof UnsignedInt1Member)
+			return boolean.class;
+		return null;
+	}
+	
+	// the java array type whose values a typed buffer holds or null if none
+	
+	static Class<?> component(Buffer buffer) {
+		
+		if (buffer instanceof FloatBuffer)
+			return float.class;
+		if (buffer instanceof DoubleBuffer)
+			return double.class;
+		if (buffer instanceof ByteBuffer)
+			return byte.class;
+		if (buffer instanceof ShortBuffer)
+			return short.class;
+		if (buffer instanceof IntBuffer)
+			return int.class;
+		if (buffer instanceof LongBuffer)
+			return long.class;
+		if (buffer instanceof CharBuffer)
+			return char.class;
+		return null;
+	}
+	
+	// bulk copy count values from a typed buffer into a java array of the
+	//   same primitive type. the buffer's own position is left alone.
+	
+	static void copy(Buffer src, int srcPos, Object array, int arrayPos, int count) {
+		
+		Buffer from = src.duplicate();
+		
+		from.position(srcPos);
+		
+		if (from instanceof ByteBuffer)
+			((ByteBuffer) from).get((byte[]) array, arrayPos, count);
+		else if (from instanceof ShortBuffer)
+			((ShortBuffer) from).get((short[]) array, arrayPos, count);
+		else if (from instanceof IntBuffer)
+			((IntBuffer) from).get((int[]) array, arrayPos, count);
+		else if (from instanceof LongBuffer)
+			((LongBuffer) from).get((long[]) array, arrayPos, count);
+		else if (from instanceof FloatBuffer)
+			((FloatBuffer) from).get((float[]) array, arrayPos, count);
+		else if (from instanceof DoubleBuffer)
+			((DoubleBuffer) from).get((double[]) array, arrayPos, count);
+		else
+			((CharBuffer) from).get((char[]) array, arrayPos, count);
+	}
+	
+	// the access for values of type in buffer or null if they do not go together
+	
+	@SuppressWarnings("rawtypes")
+	static ArrayAccess of(Allocatable type, Buffer buffer) {
+		
+		Class<?> component = component(type);
+		
+		if (component == null || buffer == null || component(buffer) != component)
+			return null;
+		
+		if (type instanceof Float32Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((Float32Member) value).setV(((FloatBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((FloatBuffer) buffer).put(pos, ((Float32Member) value).v()); }
+			};
+		
+		if (type instanceof Float64Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((Float64Member) value).setV(((DoubleBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((DoubleBuffer) buffer).put(pos, ((Float64Member) value).v()); }
+			};
+		
+		if (type instanceof SignedInt8Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((SignedInt8Member) value).setV(((ByteBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((ByteBuffer) buffer).put(pos, (byte) ((SignedInt8Member) value).v()); }
+			};
+		
+		if (type instanceof UnsignedInt8Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((UnsignedInt8Member) value).setV(((ByteBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((ByteBuffer) buffer).put(pos, (byte) ((UnsignedInt8Member) value).v()); }
+			};
+		
+		if (type instanceof SignedInt16Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((SignedInt16Member) value).setV(((ShortBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((ShortBuffer) buffer).put(pos, (short) ((SignedInt16Member) value).v()); }
+			};
+		
+		if (type instanceof UnsignedInt16Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((UnsignedInt16Member) value).setV(((ShortBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((ShortBuffer) buffer).put(pos, (short) ((UnsignedInt16Member) value).v()); }
+			};
+		
+		if (type instanceof SignedInt32Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((SignedInt32Member) value).setV(((IntBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((IntBuffer) buffer).put(pos, (int) ((SignedInt32Member) value).v()); }
+			};
+		
+		if (type instanceof UnsignedInt32Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((UnsignedInt32Member) value).setV(((IntBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((IntBuffer) buffer).put(pos, (int) ((UnsignedInt32Member) value).v()); }
+			};
+		
+		if (type instanceof SignedInt64Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((SignedInt64Member) value).setV(((LongBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((LongBuffer) buffer).put(pos, ((SignedInt64Member) value).v()); }
+			};
+		
+		if (type instanceof UnsignedInt64Member)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((UnsignedInt64Member) value).setV(((LongBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((LongBuffer) buffer).put(pos, ((UnsignedInt64Member) value).v().longValue()); }
+			};
+		
+		if (type instanceof CharMember)
+			return new ArrayAccess() {
+				void get(Object buffer, int pos, Object value) { ((CharMember) value).setV(((CharBuffer) buffer).get(pos)); }
+				void set(Object buffer, int pos, Object value) { ((CharBuffer) buffer).put(pos, ((CharMember) value).v()); }
+			};
+		
+		return null;
+	}
+	
+	// the access for values of type in array or null if they do not go together
+	
+	@SuppressWarnings("rawtypes")
+	static ArrayAccess of(Allocatable type, Object array) {
+		
+		Class<?> component = component(type);
+		
+		if (component == null || array == null || array.getClass().getComponentType() != component)
+			return null;
+		
+		if (type instanceof Float32Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((Float32Member) value).setV(((float[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((float[]) array)[pos] = ((Float32Member) value).v(); }
+			};
+		
+		if (type instanceof Float64Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((Float64Member) value).setV(((double[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((double[]) array)[pos] = ((Float64Member) value).v(); }
+			};
+		
+		if (type instanceof SignedInt8Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((SignedInt8Member) value).setV(((byte[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((byte[]) array)[pos] = (byte) ((SignedInt8Member) value).v(); }
+			};
+		
+		if (type instanceof UnsignedInt8Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((UnsignedInt8Member) value).setV(((byte[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((byte[]) array)[pos] = (byte) ((UnsignedInt8Member) value).v(); }
+			};
+		
+		if (type instanceof SignedInt16Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((SignedInt16Member) value).setV(((short[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((short[]) array)[pos] = (short) ((SignedInt16Member) value).v(); }
+			};
+		
+		if (type instanceof UnsignedInt16Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((UnsignedInt16Member) value).setV(((short[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((short[]) array)[pos] = (short) ((UnsignedInt16Member) value).v(); }
+			};
+		
+		if (type instanceof SignedInt32Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((SignedInt32Member) value).setV(((int[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((int[]) array)[pos] = (int) ((SignedInt32Member) value).v(); }
+			};
+		
+		if (type instanceof UnsignedInt32Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((UnsignedInt32Member) value).setV(((int[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((int[]) array)[pos] = (int) ((UnsignedInt32Member) value).v(); }
+			};
+		
+		if (type instanceof SignedInt64Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((SignedInt64Member) value).setV(((long[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((long[]) array)[pos] = ((SignedInt64Member) value).v(); }
+			};
+		
+		if (type instanceof UnsignedInt64Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((UnsignedInt64Member) value).setV(((long[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((long[]) array)[pos] = ((UnsignedInt64Member) value).v().longValue(); }
+			};
+		
+		if (type instanceof CharMember)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((CharMember) value).setV(((char[]) array)[pos]); }
+				void set(Object array, int pos, Object value) { ((char[]) array)[pos] = ((CharMember) value).v(); }
+			};
+		
+		if (type instanceof UnsignedInt1Member)
+			return new ArrayAccess() {
+				void get(Object array, int pos, Object value) { ((UnsignedInt1Member) value).setV(((boolean[]) array)[pos] ? 1 : 0); }
+				void set(Object array, int pos, Object value) { ((boolean[]) array)[pos] = ((UnsignedInt1Member) value).v() != 0; }
+			};
+		
+		return null;
+	}
+}
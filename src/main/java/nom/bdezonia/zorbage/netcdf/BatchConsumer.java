@@ -0,0 +1,49 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.net.URI;
+
+import nom.bdezonia.zorbage.misc.DataBundle;
+
+/**
+ * Receives the outcome of each file read by a {@link BatchReader}.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public interface BatchConsumer {
+
+	/**
+	 * Called once per file. Calls are made one at a time but not in any
+	 * particular file order. The reader does not start more files while
+	 * this consumer is behind, so returning slowly throttles the batch.
+	 * 
+	 * @param file The file that was read.
+	 * @param bundle The file's data or null if it could not be read.
+	 * @param error Why the file could not be read or null if it was. Errors
+	 *   such as running out of memory are passed here too.
+	 */
+	void accept(URI file, DataBundle bundle, Throwable error);
+}
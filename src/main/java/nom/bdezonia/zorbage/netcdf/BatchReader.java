@@ -0,0 +1,250 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import nom.bdezonia.zorbage.misc.DataBundle;
+
+/**
+ * Reads many NetCDF files, a directory or glob's worth at a time, on a
+ * bounded pool of threads. Each file's DataBundle (or the reason it could
+ * not be read) is handed to a {@link BatchConsumer}. At most maxPending
+ * files are being read or waiting for the consumer at any moment, so memory
+ * use does not grow with the number of files. A file that cannot be read
+ * does not stop the batch.
+ * <p>
+ * For example:
+ * <pre>
+ *   BatchReader reader = new BatchReader((file, bundle, error) -&gt; { ... });
+ *   reader.read(Paths.get("/data/daily"), "**.nc");
+ * </pre>
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class BatchReader {
+
+	private final BatchConsumer consumer;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private int maxPending = 2 * Runtime.getRuntime().availableProcessors();
+	private ReadOptions options;
+	private final AtomicLong filesRead = new AtomicLong();
+	private final AtomicLong filesFailed = new AtomicLong();
+
+	/**
+	 * Make a reader that hands every file's outcome to consumer.
+	 */
+	public BatchReader(BatchConsumer consumer) {
+		if (consumer == null)
+			throw new IllegalArgumentException("consumer cannot be null");
+		this.consumer = consumer;
+		this.options = new ReadOptions();
+	}
+	
+	/**
+	 * Set the number of files read at once. Defaults to the number of
+	 * processors.
+	 */
+	public void setThreads(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("thread count must be positive");
+		this.threads = threads;
+	}
+	
+	/**
+	 * Set the most files that can be read or waiting for the consumer at
+	 * once. Defaults to twice the number of processors.
+	 */
+	public void setMaxPending(int maxPending) {
+		if (maxPending < 1)
+			throw new IllegalArgumentException("max pending files must be positive");
+		this.maxPending = maxPending;
+	}
+	
+	/**
+	 * Set the options each file is read with. The variables of a file are
+	 * read one after another since files are read concurrently; any
+	 * variable executor is not used. A variable that cannot be read fails
+	 * its whole file.
+	 */
+	public void setReadOptions(ReadOptions options) {
+		if (options == null)
+			throw new IllegalArgumentException("options cannot be null");
+		this.options = options;
+	}
+	
+	/**
+	 * The number of files read so far.
+	 */
+	public long filesRead() {
+		return filesRead.get();
+	}
+	
+	/**
+	 * The number of files that could not be read so far.
+	 */
+	public long filesFailed() {
+		return filesFailed.get();
+	}
+	
+	/**
+	 * Read every regular file under directory whose path relative to it
+	 * matches glob, such as "*.nc" for the directory itself or "**.nc" for
+	 * it and all its subdirectories. Returns when every file has been
+	 * handed to the consumer.
+	 */
+	public void read(Path directory, String glob) throws IOException, InterruptedException {
+		
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+		
+		try (Stream<Path> paths = Files.walk(directory)) {
+			
+			read(paths.filter(p -> Files.isRegularFile(p) && matcher.matches(directory.relativize(p))).iterator());
+		}
+	}
+	
+	/**
+	 * Read the given files. Returns when every file has been handed to the
+	 * consumer.
+	 */
+	public void read(Iterable<Path> files) throws InterruptedException {
+		
+		read(files.iterator());
+	}
+	
+	private void read(Iterator<Path> files) throws InterruptedException {
+		
+		ReadOptions readOptions = options;
+		
+		Semaphore pending = new Semaphore(maxPending);
+		
+		ExecutorService workers = Executors.newFixedThreadPool(threads, r -> {
+			Thread t = new Thread(r, "netcdf-batch");
+			t.setDaemon(true);
+			return t;
+		});
+		
+		Object consumerLock = new Object();
+		
+		Throwable[] consumerFailure = new Throwable[1];
+		
+		try {
+			
+			while (files.hasNext()) {
+				
+				// blocks while the workers or the consumer are behind
+				
+				pending.acquire();
+				
+				synchronized (consumerLock) {
+					if (consumerFailure[0] != null) {
+						pending.release();
+						break;
+					}
+				}
+				
+				URI uri = files.next().toUri();
+				
+				workers.execute(() -> {
+					
+					// the permit goes back whatever happens or the walk could hang
+					
+					try {
+						
+						DataBundle bundle = null;
+						
+						Throwable error = null;
+						
+						try {
+							
+							bundle = NetCDF.readBundle(uri, readOptions, true);
+							
+							filesRead.incrementAndGet();
+							
+						} catch (Throwable t) {
+							
+							// errors such as running out of memory on one big file
+							//   are reported like any other failure
+							
+							error = t;
+							
+							filesFailed.incrementAndGet();
+						}
+						
+						synchronized (consumerLock) {
+							
+							if (consumerFailure[0] == null) {
+								
+								try {
+									
+									consumer.accept(uri, bundle, error);
+									
+								} catch (Throwable t) {
+									
+									consumerFailure[0] = t;
+								}
+							}
+						}
+						
+					} finally {
+						
+						pending.release();
+					}
+				});
+			}
+			
+		} finally {
+			
+			workers.shutdown();
+			
+			while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+				// keep waiting for the files in flight
+			}
+		}
+		
+		Throwable failure = consumerFailure[0];
+		
+		if (failure instanceof Error)
+			throw (Error) failure;
+		
+		if (failure instanceof RuntimeException)
+			throw (RuntimeException) failure;
+		
+		if (failure != null)
+			throw new IllegalStateException("Batch consumer failed", failure);
+	}
+}
@@ -0,0 +1,551 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.nc2.Variable;
+
+/**
+ * A fast path for classic format (CDF-1, CDF-2 and CDF-5) files. The
+ * values of a non-record variable in such a file are stored contiguously,
+ * big endian, at an offset recorded in the file header. This class parses
+ * the header itself and memory maps each variable it is asked about once.
+ * Reads are then handed a big endian typed buffer view of the mapping and
+ * never build a UCAR Array.
+ * <p>
+ * One ClassicFormat belongs to each open file handle (see
+ * {@link NetcdfFilePool.Lease#classic()}) and is used by one thread at a
+ * time. The buffers it hands out are read only and stay valid after it is
+ * closed. A mapping is released once no buffer refers to it.
+ * <p>
+ * Parsed headers are remembered per file, modification time and length so
+ * that opening a file again (as every unpooled read does) does not parse
+ * its header again. The file itself is only opened once a variable is
+ * mapped.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class ClassicFormat implements Closeable {
+
+	private static final int NC_DIMENSION = 10;
+	private static final int NC_VARIABLE = 11;
+	private static final int NC_ATTRIBUTE = 12;
+	
+	// map no more than this many bytes at once
+	
+	private static final int MAX_MAP = 1 << 30;
+	
+	// the most parsed headers remembered
+	
+	private static final int MAX_HEADERS = 64;
+	
+	// stands for a file that is not in a classic format
+	
+	private static final Header NOT_CLASSIC = new Header();
+	
+	private static final Map<String, Header> HEADERS = new LinkedHashMap<String, Header>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Header> eldest) {
+			return size() > MAX_HEADERS;
+		}
+	};
+	
+	private final Path path;
+	
+	// opened the first time a variable is mapped
+	
+	private FileChannel channel;
+	
+	private final Header header;
+	
+	// the mapping of each variable that fits in one, by short name
+	
+	private final Map<String, ByteBuffer> mappings = new HashMap<>();
+
+	private static class VarInfo {
+		int ncType;
+		boolean isRecord;
+		long[] shape;
+		long begin;
+	}
+	
+	private static class Header {
+		Map<String, VarInfo> vars = new HashMap<>();
+	}
+	
+	// where the values of a section are in the file
+	
+	private static class Region {
+		VarInfo info;
+		int elemSize;
+		Class<?> type;
+		long first;
+		long count;
+	}
+	
+	private ClassicFormat(Path path, Header header) {
+		this.path = path;
+		this.header = header;
+	}
+	
+	/**
+	 * Open a local classic format file. Returns null if the file is remote
+	 * or in another format.
+	 */
+	static ClassicFormat open(URI fileURI) throws IOException {
+		
+		if (!"file".equals(fileURI.getScheme()))
+			return null;
+		
+		Path path = Paths.get(fileURI);
+		
+		if (!Files.isRegularFile(path))
+			return null;
+		
+		String key = path + "|" + Files.getLastModifiedTime(path).toMillis() + "|" + Files.size(path);
+		
+		Header header;
+		
+		synchronized (HEADERS) {
+			header = HEADERS.get(key);
+		}
+		
+		if (header == null) {
+			
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+				
+				header = parse(in);
+			}
+			
+			if (header == null)
+				header = NOT_CLASSIC;
+			
+			synchronized (HEADERS) {
+				HEADERS.put(key, header);
+			}
+		}
+		
+		if (header == NOT_CLASSIC)
+			return null;
+		
+		return new ClassicFormat(path, header);
+	}
+	
+	@Override
+	public synchronized void close() throws IOException {
+		
+		mappings.clear();
+		
+		if (channel != null)
+			channel.close();
+		
+		channel = null;
+	}
+	
+	/**
+	 * The values of a section of a variable (all of it when section is null)
+	 * in row major order as a read only, big endian typed buffer: a
+	 * ByteBuffer, ShortBuffer, IntBuffer, LongBuffer, FloatBuffer or
+	 * DoubleBuffer whose limit is the number of values. Nothing is copied.
+	 * 
+	 * @return The buffer or null if the fast path does not apply to this
+	 *   variable or section. char variables have no buffer view.
+	 */
+	synchronized Buffer values(Variable var, Section section) throws IOException {
+		
+		Region region = locate(var, section);
+		
+		if (region == null || region.type == char.class || region.count * region.elemSize > MAX_MAP)
+			return null;
+		
+		ByteBuffer bytes = map(var.getShortName(), region);
+		
+		if (bytes == null)
+			return null;
+		
+		if (region.type == byte.class)
+			return bytes;
+		if (region.type == short.class)
+			return bytes.asShortBuffer();
+		if (region.type == int.class)
+			return bytes.asIntBuffer();
+		if (region.type == long.class)
+			return bytes.asLongBuffer();
+		if (region.type == float.class)
+			return bytes.asFloatBuffer();
+		return bytes.asDoubleBuffer();
+	}
+	
+	/**
+	 * Read the values of a section of a variable (all of it when section is
+	 * null) into a java array of the type Array.get1DJavaArray() would give.
+	 * 
+	 * @return The values in row major order or null if the fast path does
+	 *   not apply to this variable or section. The caller should then read
+	 *   the values through the NetCDF library.
+	 */
+	synchronized Object read(Variable var, Section section) throws IOException {
+		
+		Region region = locate(var, section);
+		
+		if (region == null || region.count > Integer.MAX_VALUE - 8)
+			return null;
+		
+		Object data = java.lang.reflect.Array.newInstance(region.type, (int) region.count);
+		
+		// large sections are copied one mapping sized piece at a time
+		
+		long perMap = MAX_MAP / region.elemSize;
+		
+		for (long done = 0; done < region.count; done += perMap) {
+			
+			Region piece = new Region();
+			piece.info = region.info;
+			piece.elemSize = region.elemSize;
+			piece.type = region.type;
+			piece.first = region.first + done;
+			piece.count = Math.min(perMap, region.count - done);
+			
+			ByteBuffer bytes = map(var.getShortName(), piece);
+			
+			if (bytes == null)
+				return null;
+			
+			fill(data, (int) done, (int) piece.count, bytes);
+		}
+		
+		return data;
+	}
+	
+	// where a section of var is stored or null if it is not stored contiguously
+	//   or var does not match what the header says
+	
+	@SuppressWarnings("deprecation")
+	private Region locate(Variable var, Section section) {
+		
+		VarInfo info = header.vars.get(var.getShortName());
+		
+		if (info == null || info.isRecord)
+			return null;
+		
+		int[] shape = var.getShape();
+		
+		if (shape.length != info.shape.length)
+			return null;
+		
+		for (int i = 0; i < shape.length; i++) {
+			if (shape[i] != info.shape[i])
+				return null;
+		}
+		
+		Class<?> expected = primitiveType(info.ncType);
+		
+		if (expected == null || expected != var.getDataType().getPrimitiveClassType())
+			return null;
+		
+		// only full variables and slabs of the outer dimension are contiguous
+		
+		long plane = 1;
+		for (int i = 1; i < shape.length; i++) {
+			plane *= shape[i];
+		}
+		
+		Region region = new Region();
+		
+		region.info = info;
+		region.elemSize = elementSize(info.ncType);
+		region.type = expected;
+		
+		if (section == null || shape.length == 0) {
+			
+			region.first = 0;
+			region.count = (shape.length == 0) ? 1 : plane * shape[0];
+		}
+		else {
+			
+			for (int i = 1; i < shape.length; i++) {
+				Range r = section.getRange(i);
+				if (r.first() != 0 || r.length() != shape[i] || r.stride() != 1)
+					return null;
+			}
+			
+			Range outer = section.getRange(0);
+			
+			if (outer.stride() != 1 && outer.length() > 1)
+				return null;
+			
+			region.first = outer.first() * plane;
+			region.count = outer.length() * plane;
+		}
+		
+		return region;
+	}
+	
+	// a big endian view of a region no bigger than MAX_MAP bytes. variables
+	//   that fit are mapped whole, once, and sliced. larger ones are mapped a
+	//   region at a time. returns null if the file is shorter than the header
+	//   says.
+	
+	private ByteBuffer map(String name, Region region) throws IOException {
+		
+		VarInfo info = region.info;
+		
+		long total = region.elemSize;
+		for (long dim : info.shape) {
+			total *= dim;
+		}
+		
+		long pos = region.first * region.elemSize;
+		
+		long bytes = region.count * region.elemSize;
+		
+		if (channel == null)
+			channel = FileChannel.open(path, StandardOpenOption.READ);
+		
+		ByteBuffer whole;
+		
+		if (total <= MAX_MAP) {
+			
+			whole = mappings.get(name);
+			
+			if (whole == null) {
+				
+				if (info.begin + total > channel.size())
+					return null;
+				
+				whole = channel.map(FileChannel.MapMode.READ_ONLY, info.begin, total);
+				
+				mappings.put(name, whole);
+			}
+		}
+		else {
+			
+			if (info.begin + pos + bytes > channel.size())
+				return null;
+			
+			whole = channel.map(FileChannel.MapMode.READ_ONLY, info.begin + pos, bytes);
+			
+			pos = 0;
+		}
+		
+		// a duplicate has its own position and limit but not the byte order
+		
+		ByteBuffer slice = whole.duplicate();
+		
+		slice.position((int) pos);
+		slice.limit((int) (pos + bytes));
+		
+		return slice.slice().order(ByteOrder.BIG_ENDIAN);
+	}
+	
+	// bulk copy count values from a big endian buffer into the java array
+	
+	private static void fill(Object data, int offset, int count, ByteBuffer buffer) {
+		
+		if (data instanceof byte[]) {
+			buffer.get((byte[]) data, offset, count);
+		}
+		else if (data instanceof char[]) {
+			// classic chars are single bytes
+			char[] chars = (char[]) data;
+			for (int i = 0; i < count; i++) {
+				chars[offset+i] = (char) (buffer.get() & 0xff);
+			}
+		}
+		else if (data instanceof short[]) {
+			buffer.asShortBuffer().get((short[]) data, offset, count);
+		}
+		else if (data instanceof int[]) {
+			buffer.asIntBuffer().get((int[]) data, offset, count);
+		}
+		else if (data instanceof long[]) {
+			buffer.asLongBuffer().get((long[]) data, offset, count);
+		}
+		else if (data instanceof float[]) {
+			buffer.asFloatBuffer().get((float[]) data, offset, count);
+		}
+		else if (data instanceof double[]) {
+			buffer.asDoubleBuffer().get((double[]) data, offset, count);
+		}
+	}
+	
+	private static int elementSize(int ncType) {
+		switch (ncType) {
+			case 1: case 2: case 7: return 1;
+			case 3: case 8: return 2;
+			case 4: case 5: case 9: return 4;
+			case 6: case 10: case 11: return 8;
+			default: return 1;
+		}
+	}
+	
+	private static Class<?> primitiveType(int ncType) {
+		switch (ncType) {
+			case 1: case 7: return byte.class;
+			case 2: return char.class;
+			case 3: case 8: return short.class;
+			case 4: case 9: return int.class;
+			case 5: return float.class;
+			case 6: return double.class;
+			case 10: case 11: return long.class;
+			default: return null;
+		}
+	}
+	
+	// see the NetCDF classic and 64-bit offset format specifications. returns
+	//   null if the file is not a classic format file.
+	
+	private static Header parse(DataInputStream in) throws IOException {
+		
+		byte[] magic = new byte[4];
+		
+		try {
+			in.readFully(magic);
+		} catch (IOException e) {
+			return null;
+		}
+		
+		if (magic[0] != 'C' || magic[1] != 'D' || magic[2] != 'F')
+			return null;
+		
+		int version = magic[3];
+		
+		if (version != 1 && version != 2 && version != 5)
+			return null;
+		
+		boolean cdf5 = (version == 5);
+		boolean bigOffsets = (version != 1);
+		
+		nonNeg(in, cdf5);  // numrecs
+		
+		// dimensions
+		
+		int tag = in.readInt();
+		long numDims = nonNeg(in, cdf5);
+		if (tag != NC_DIMENSION && (tag != 0 || numDims != 0))
+			return null;
+		long[] dimLengths = new long[(int) numDims];
+		for (int i = 0; i < numDims; i++) {
+			name(in, cdf5);
+			dimLengths[i] = nonNeg(in, cdf5);
+		}
+		
+		// global attributes
+		
+		if (!skipAttributes(in, cdf5))
+			return null;
+		
+		// variables
+		
+		Header header = new Header();
+		
+		tag = in.readInt();
+		long numVars = nonNeg(in, cdf5);
+		if (tag != NC_VARIABLE && (tag != 0 || numVars != 0))
+			return null;
+		for (int v = 0; v < numVars; v++) {
+			VarInfo info = new VarInfo();
+			String name = name(in, cdf5);
+			int rank = (int) nonNeg(in, cdf5);
+			info.shape = new long[rank];
+			for (int d = 0; d < rank; d++) {
+				int dimId = (int) nonNeg(in, cdf5);
+				info.shape[d] = dimLengths[dimId];
+				if (d == 0 && dimLengths[dimId] == 0)
+					info.isRecord = true;
+			}
+			if (!skipAttributes(in, cdf5))
+				return null;
+			info.ncType = in.readInt();
+			nonNeg(in, cdf5);  // vsize
+			info.begin = bigOffsets ? in.readLong() : (in.readInt() & 0xffffffffL);
+			header.vars.put(name, info);
+		}
+		
+		return header;
+	}
+	
+	private static boolean skipAttributes(DataInputStream in, boolean cdf5) throws IOException {
+		
+		int tag = in.readInt();
+		long numAtts = nonNeg(in, cdf5);
+		if (tag != NC_ATTRIBUTE && (tag != 0 || numAtts != 0))
+			return false;
+		for (int i = 0; i < numAtts; i++) {
+			name(in, cdf5);
+			int ncType = in.readInt();
+			long count = nonNeg(in, cdf5);
+			skip(in, padded(count * elementSize(ncType)));
+		}
+		return true;
+	}
+	
+	private static String name(DataInputStream in, boolean cdf5) throws IOException {
+		
+		int length = (int) nonNeg(in, cdf5);
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		skip(in, padded(length) - length);
+		return new String(bytes, "UTF-8");
+	}
+	
+	private static long nonNeg(DataInputStream in, boolean cdf5) throws IOException {
+		return cdf5 ? in.readLong() : (in.readInt() & 0xffffffffL);
+	}
+	
+	private static long padded(long n) {
+		return (n + 3) & ~3L;
+	}
+	
+	private static void skip(DataInputStream in, long n) throws IOException {
+		while (n > 0) {
+			int skipped = in.skipBytes((int) Math.min(n, Integer.MAX_VALUE));
+			if (skipped <= 0)
+				throw new IOException("unexpected end of NetCDF header");
+			n -= skipped;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.Allocatable;
+
+/**
+ * The choices made about how one NetCDF variable is decoded: the zorbage
+ * algebra and element type it becomes, the RowCopier that moves its values,
+ * and whether scale / offset unpacking happens during the copy.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+@SuppressWarnings("rawtypes")
+final class Decoder {
+
+	final Algebra<?,Allocatable> algebra;
+	final Allocatable type;
+	final RowCopier<Object> copier;
+	final boolean unpacked;
+	
+	Decoder(Algebra<?,Allocatable> algebra, Allocatable type, RowCopier<Object> copier, boolean unpacked) {
+		this.algebra = algebra;
+		this.type = type;
+		this.copier = copier;
+		this.unpacked = unpacked;
+	}
+}
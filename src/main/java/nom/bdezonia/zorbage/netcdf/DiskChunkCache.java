@@ -0,0 +1,692 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
+import ucar.nc2.Attribute;
+import ucar.nc2.Variable;
+
+/**
+ * A cache of decoded NetCDF values kept in a local directory. Each entry is
+ * the uncompressed values of one native chunk of one variable (see
+ * {@link #chunkShape(Variable)}), stored in native byte order so it can be
+ * mapped straight back into memory. Entries are keyed by the file's URI,
+ * modification time and length, the variable's name and the chunk's
+ * origin, so a changed file never returns stale values and the same values
+ * are found however they are read.
+ * <p>
+ * The directory can be shared by several JVMs. Entries are written to a
+ * temporary file and moved into place atomically so a reader never sees a
+ * partial entry. When the entries grow past the size cap the least
+ * recently used ones are deleted while holding a lock file in the
+ * directory. Temporary files left behind by a JVM that died while writing
+ * them are deleted too.
+ * <p>
+ * Only local files and fixed width values are cached. Problems with the
+ * cache directory fail the read rather than being hidden. See
+ * {@link ReadOptions#setChunkCache(DiskChunkCache)}.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class DiskChunkCache {
+
+	private static final String SUFFIX = ".chunk";
+	
+	private static final String TEMP_SUFFIX = ".tmp";
+	
+	private static final String LOCK_FILE = "cache.lock";
+	
+	private static final int COPY_BUFFER_BYTES = 1024 * 1024;
+	
+	// how much of a variable without native chunks one entry holds
+	
+	private static final long DEFAULT_CHUNK_BYTES = 4L * 1024 * 1024;
+	
+	// no live writer keeps a temporary file this long
+	
+	private static final long STALE_TEMP_MILLIS = 60L * 60 * 1000;
+	
+	private final Path directory;
+	private final long maxBytes;
+	private final AtomicLong approximateBytes;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Use directory (created if needed) to cache at most maxBytes of values.
+	 */
+	public DiskChunkCache(File directory, long maxBytes) throws IOException {
+		if (maxBytes < 1)
+			throw new IllegalArgumentException("cache size must be positive");
+		this.directory = directory.toPath();
+		this.maxBytes = maxBytes;
+		Files.createDirectories(this.directory);
+		deleteStaleTemps();
+		this.approximateBytes = new AtomicLong(totalBytes(entries()));
+	}
+	
+	/**
+	 * The number of chunks found in the cache.
+	 */
+	public long hits() {
+		return hits.get();
+	}
+	
+	/**
+	 * The number of chunks that had to be decoded from their file.
+	 */
+	public long misses() {
+		return misses.get();
+	}
+	
+	/**
+	 * The directory the cache lives in.
+	 */
+	public File directory() {
+		return directory.toFile();
+	}
+	
+	/**
+	 * The shape of the chunks a variable is cached in: the chunk sizes it is
+	 * stored with (its _ChunkSizes attribute) or, for variables stored
+	 * contiguously, as many planes of the outer dimension as fit in 4 MiB.
+	 * It depends only on the variable. Returns null if one chunk is too big
+	 * to cache.
+	 */
+	public static int[] chunkShape(Variable var) {
+		
+		Class<?> component = var.getDataType().getPrimitiveClassType();
+		
+		int[] shape = var.getShape();
+		
+		int rank = shape.length;
+		
+		int[] chunk = null;
+		
+		Attribute att = var.attributes().findAttribute("_ChunkSizes");
+		
+		if (att != null && !att.isString() && att.getLength() == rank) {
+			chunk = new int[rank];
+			for (int i = 0; i < rank; i++) {
+				Number n = att.getNumericValue(i);
+				if (n == null || n.intValue() < 1) {
+					chunk = null;
+					break;
+				}
+				chunk[i] = n.intValue();
+			}
+		}
+		
+		if (chunk == null) {
+			chunk = shape.clone();
+			if (rank > 0) {
+				long plane = elementSize(component);
+				for (int i = 1; i < rank; i++) {
+					plane *= shape[i];
+				}
+				chunk[0] = (int) Math.max(1, Math.min(shape[0], DEFAULT_CHUNK_BYTES / Math.max(1, plane)));
+			}
+		}
+		
+		// chunks along an unlimited dimension can be longer than it is
+		
+		long bytes = elementSize(component);
+		for (int i = 0; i < rank; i++) {
+			chunk[i] = Math.max(1, Math.min(chunk[i], shape[i]));
+			bytes *= chunk[i];
+		}
+		
+		if (bytes > Integer.MAX_VALUE - 8)
+			return null;
+		
+		return chunk;
+	}
+	
+	// the pieces of whole that each lie in one chunk, as origins and shapes
+	//   relative to whole, in row major chunk order. null when whole is not
+	//   cached.
+	
+	List<int[][]> plan(URI fileURI, Variable var, Section whole) {
+		
+		int[] chunkShape = cachedChunkShape(fileURI, var, whole);
+		
+		if (chunkShape == null)
+			return null;
+		
+		int[] origin = whole.getOrigin();
+		int[] shape = whole.getShape();
+		
+		int rank = shape.length;
+		
+		List<int[][]> pieces = new ArrayList<>();
+		
+		for (int[] chunkOrigin : chunkOrigins(origin, shape, chunkShape)) {
+			
+			int[] pieceOrigin = new int[rank];
+			int[] pieceShape = new int[rank];
+			for (int i = 0; i < rank; i++) {
+				int lo = Math.max(chunkOrigin[i], origin[i]);
+				int hi = Math.min(chunkOrigin[i] + chunkShape[i], origin[i] + shape[i]);
+				pieceOrigin[i] = lo - origin[i];
+				pieceShape[i] = hi - lo;
+			}
+			
+			pieces.add(new int[][] {pieceOrigin, pieceShape});
+		}
+		
+		return pieces;
+	}
+	
+	// the values of a section of var (all of it when section is null) in row
+	//   major order, read through the cache. a section that is exactly one
+	//   chunk comes back as the chunk itself: a typed buffer that is the
+	//   mapped entry on a hit. other sections are assembled into a java
+	//   array. returns null when the section is not cached.
+	
+	Object read(URI fileURI, Variable var, Section section) throws IOException {
+		
+		Section whole = (section == null) ? new Section(var.getShape()) : section;
+		
+		int[] chunkShape = cachedChunkShape(fileURI, var, whole);
+		
+		if (chunkShape == null)
+			return null;
+		
+		int[] origin = whole.getOrigin();
+		int[] shape = whole.getShape();
+		
+		int rank = shape.length;
+		
+		long count = 1;
+		for (int i = 0; i < rank; i++) {
+			count *= shape[i];
+		}
+		
+		if (count > Integer.MAX_VALUE - 8)
+			return null;
+		
+		Class<?> component = var.getDataType().getPrimitiveClassType();
+		
+		if (count == 0)
+			return java.lang.reflect.Array.newInstance(component, 0);
+		
+		String fileKey = fileKey(fileURI, var);
+		
+		int[] varShape = var.getShape();
+		
+		List<int[]> chunkOrigins = chunkOrigins(origin, shape, chunkShape);
+		
+		Object values = null;
+		
+		for (int[] chunkOrigin : chunkOrigins) {
+			
+			int[] extent = new int[rank];
+			for (int i = 0; i < rank; i++) {
+				extent[i] = Math.min(chunkShape[i], varShape[i] - chunkOrigin[i]);
+			}
+			
+			Buffer chunk = chunk(fileKey, var, component, chunkOrigin, extent);
+			
+			if (chunkOrigins.size() == 1 && Arrays.equals(chunkOrigin, origin) && Arrays.equals(extent, shape))
+				return chunk;
+			
+			if (values == null)
+				values = java.lang.reflect.Array.newInstance(component, (int) count);
+			
+			copyBox(chunk, chunkOrigin, extent, values, origin, shape);
+		}
+		
+		return values;
+	}
+	
+	/**
+	 * Delete least recently used entries until the cache is within its size
+	 * cap, and any temporary files abandoned by a JVM that died. Safe to
+	 * call while other JVMs use the same directory.
+	 */
+	public void evict() throws IOException {
+		
+		// the file lock keeps other jvms out. within this jvm only one
+		//   thread may hold it.
+		
+		synchronized (this) {
+			
+			try (FileChannel ch = FileChannel.open(directory.resolve(LOCK_FILE),
+													StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					FileLock lock = ch.lock())
+			{
+				deleteStaleTemps();
+				
+				List<Path> entries = entries();
+				
+				entries.sort((a, b) -> Long.compare(a.toFile().lastModified(), b.toFile().lastModified()));
+				
+				long total = totalBytes(entries);
+				
+				for (Path p : entries) {
+					
+					if (total <= maxBytes)
+						break;
+					
+					long size = p.toFile().length();
+					
+					// another jvm may have deleted it first
+					
+					if (Files.deleteIfExists(p))
+						total -= size;
+				}
+				
+				approximateBytes.set(total);
+			}
+		}
+	}
+	
+	// the chunk shape to cache var's values in or null if whole is not cached
+	
+	private static int[] cachedChunkShape(URI fileURI, Variable var, Section whole) {
+		
+		if (!"file".equalsIgnoreCase(fileURI.getScheme()))
+			return null;
+		
+		Class<?> component = var.getDataType().getPrimitiveClassType();
+		
+		if (component != byte.class && component != short.class && component != int.class &&
+				component != long.class && component != float.class && component != double.class &&
+				component != char.class)
+			return null;
+		
+		// strided sections skip values so are read directly
+		
+		for (Range r : whole.getRanges()) {
+			if (r.stride() != 1 && r.length() > 1)
+				return null;
+		}
+		
+		return chunkShape(var);
+	}
+	
+	// the origins of the chunks the box at origin with shape touches, in row
+	//   major order
+	
+	private static List<int[]> chunkOrigins(int[] origin, int[] shape, int[] chunkShape) {
+		
+		int rank = shape.length;
+		
+		int[] first = new int[rank];
+		int[] last = new int[rank];
+		for (int i = 0; i < rank; i++) {
+			first[i] = origin[i] / chunkShape[i];
+			last[i] = (origin[i] + shape[i] - 1) / chunkShape[i];
+		}
+		
+		List<int[]> origins = new ArrayList<>();
+		
+		int[] index = first.clone();
+		
+		while (true) {
+			
+			int[] chunkOrigin = new int[rank];
+			for (int i = 0; i < rank; i++) {
+				chunkOrigin[i] = index[i] * chunkShape[i];
+			}
+			origins.add(chunkOrigin);
+			
+			int j = rank - 1;
+			while (j >= 0 && ++index[j] > last[j]) {
+				index[j] = first[j];
+				j--;
+			}
+			if (j < 0)
+				break;
+		}
+		
+		return origins;
+	}
+	
+	// the values of one chunk: mapped from its entry if there is one or else
+	//   decoded from the file and stored
+	
+	private Buffer chunk(String fileKey, Variable var, Class<?> component, int[] origin, int[] extent)
+		throws IOException
+	{
+		Path entry = directory.resolve(hash(fileKey + "|" + Arrays.toString(origin) + "|" + Arrays.toString(extent)) + SUFFIX);
+		
+		long count = 1;
+		for (int i = 0; i < extent.length; i++) {
+			count *= extent[i];
+		}
+		
+		long bytes = count * elementSize(component);
+		
+		Buffer cached = map(entry, component, bytes);
+		
+		if (cached != null) {
+			
+			// the modification time of an entry is its last use
+			
+			try {
+				Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			} catch (NoSuchFileException e) {
+				// another jvm just evicted it. the mapping is still good.
+			}
+			
+			hits.incrementAndGet();
+			
+			return cached;
+		}
+		
+		misses.incrementAndGet();
+		
+		Array array;
+		
+		try {
+			
+			array = var.read(new Section(origin, extent));
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IllegalArgumentException("Bad chunk for variable "+var.getShortName()+": "+e.getMessage());
+		}
+		
+		Object values = array.get1DJavaArray(array.getDataType());
+		
+		if (bytes <= maxBytes)
+			store(entry, values, component);
+		
+		return wrap(values);
+	}
+	
+	// a read only native order view of an entry or null if there is none
+	
+	private static Buffer map(Path entry, Class<?> component, long bytes) throws IOException {
+		
+		try (FileChannel ch = FileChannel.open(entry, StandardOpenOption.READ)) {
+			
+			// not what this version writes. it is replaced.
+			
+			if (ch.size() != bytes)
+				return null;
+			
+			ByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, bytes).order(ByteOrder.nativeOrder());
+			
+			if (component == byte.class)
+				return buf;
+			if (component == short.class)
+				return buf.asShortBuffer();
+			if (component == int.class)
+				return buf.asIntBuffer();
+			if (component == long.class)
+				return buf.asLongBuffer();
+			if (component == float.class)
+				return buf.asFloatBuffer();
+			if (component == double.class)
+				return buf.asDoubleBuffer();
+			return buf.asCharBuffer();
+			
+		} catch (NoSuchFileException e) {
+			
+			return null;
+		}
+	}
+	
+	private static Buffer wrap(Object values) {
+		
+		if (values instanceof byte[])
+			return ByteBuffer.wrap((byte[]) values);
+		if (values instanceof short[])
+			return ShortBuffer.wrap((short[]) values);
+		if (values instanceof int[])
+			return IntBuffer.wrap((int[]) values);
+		if (values instanceof long[])
+			return LongBuffer.wrap((long[]) values);
+		if (values instanceof float[])
+			return FloatBuffer.wrap((float[]) values);
+		if (values instanceof double[])
+			return DoubleBuffer.wrap((double[]) values);
+		return CharBuffer.wrap((char[]) values);
+	}
+	
+	// copy the part of a chunk that lies in the box at origin with shape into
+	//   values, which holds the box in row major order
+	
+	private static void copyBox(Buffer chunk, int[] chunkOrigin, int[] extent,
+									Object values, int[] origin, int[] shape)
+	{
+		int rank = shape.length;
+		
+		if (rank == 0) {
+			ArrayAccess.copy(chunk, 0, values, 0, 1);
+			return;
+		}
+		
+		int[] lo = new int[rank];
+		int[] hi = new int[rank];
+		for (int i = 0; i < rank; i++) {
+			lo[i] = Math.max(chunkOrigin[i], origin[i]);
+			hi[i] = Math.min(chunkOrigin[i] + extent[i], origin[i] + shape[i]);
+		}
+		
+		int last = rank - 1;
+		
+		int rowLength = hi[last] - lo[last];
+		
+		int[] pos = lo.clone();
+		
+		while (true) {
+			
+			int src = 0;
+			int dst = 0;
+			for (int i = 0; i < rank; i++) {
+				src = src * extent[i] + (pos[i] - chunkOrigin[i]);
+				dst = dst * shape[i] + (pos[i] - origin[i]);
+			}
+			
+			ArrayAccess.copy(chunk, src, values, dst, rowLength);
+			
+			int j = last - 1;
+			while (j >= 0 && ++pos[j] == hi[j]) {
+				pos[j] = lo[j];
+				j--;
+			}
+			if (j < 0)
+				break;
+		}
+	}
+	
+	// write an entry so that readers only ever see it whole
+	
+	private void store(Path entry, Object values, Class<?> component) throws IOException {
+		
+		long bytes = (long) java.lang.reflect.Array.getLength(values) * elementSize(component);
+		
+		Path tmp = Files.createTempFile(directory, "chunk", TEMP_SUFFIX);
+		
+		try {
+			
+			try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+				write(ch, values, component);
+			}
+			
+			Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			
+			tmp = null;
+			
+		} finally {
+			
+			if (tmp != null)
+				Files.deleteIfExists(tmp);
+		}
+		
+		if (approximateBytes.addAndGet(bytes) > maxBytes)
+			evict();
+	}
+	
+	private static int elementSize(Class<?> component) {
+		if (component == byte.class)
+			return 1;
+		if (component == short.class || component == char.class)
+			return 2;
+		if (component == int.class || component == float.class)
+			return 4;
+		return 8;
+	}
+	
+	private static String fileKey(URI fileURI, Variable var) {
+		
+		File file = new File(fileURI);
+		
+		return fileURI + "|" + file.lastModified() + "|" + file.length() + "|" + var.getFullName();
+	}
+	
+	private static String hash(String key) {
+		
+		try {
+			
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+			
+			StringBuilder sb = new StringBuilder();
+			for (byte b : digest) {
+				sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+				sb.append(Character.forDigit(b & 0xf, 16));
+			}
+			return sb.toString();
+			
+		} catch (NoSuchAlgorithmException e) {
+			
+			// every jvm is required to support SHA-256
+			
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private List<Path> entries() throws IOException {
+		
+		List<Path> entries = new ArrayList<>();
+		
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path p : stream) {
+				entries.add(p);
+			}
+		}
+		
+		return entries;
+	}
+	
+	private void deleteStaleTemps() throws IOException {
+		
+		long cutoff = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+		
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+			for (Path p : stream) {
+				if (p.toFile().lastModified() < cutoff)
+					Files.deleteIfExists(p);
+			}
+		}
+	}
+	
+	private static long totalBytes(List<Path> entries) {
+		long total = 0;
+		for (Path p : entries) {
+			total += p.toFile().length();
+		}
+		return total;
+	}
+	
+	// write values through a small buffer so big chunks are not doubled in memory
+	
+	private static void write(FileChannel ch, Object values, Class<?> component) throws IOException {
+		
+		ByteBuffer buf = ByteBuffer.allocate(COPY_BUFFER_BYTES).order(ByteOrder.nativeOrder());
+		
+		int count = java.lang.reflect.Array.getLength(values);
+		
+		int elementSize = elementSize(component);
+		
+		int perPass = COPY_BUFFER_BYTES / elementSize;
+		
+		for (int start = 0; start < count; start += perPass) {
+			
+			int n = Math.min(perPass, count - start);
+			
+			buf.clear();
+			
+			if (component == byte.class)
+				buf.put((byte[]) values, start, n);
+			else if (component == short.class)
+				buf.asShortBuffer().put((short[]) values, start, n);
+			else if (component == int.class)
+				buf.asIntBuffer().put((int[]) values, start, n);
+			else if (component == long.class)
+				buf.asLongBuffer().put((long[]) values, start, n);
+			else if (component == float.class)
+				buf.asFloatBuffer().put((float[]) values, start, n);
+			else if (component == double.class)
+				buf.asDoubleBuffer().put((double[]) values, start, n);
+			else
+				buf.asCharBuffer().put((char[]) values, start, n);
+			
+			// typed views do not move the byte buffer's position
+			
+			buf.position(0);
+			buf.limit(n * elementSize);
+			
+			while (buf.hasRemaining()) {
+				ch.write(buf);
+			}
+		}
+	}
+}
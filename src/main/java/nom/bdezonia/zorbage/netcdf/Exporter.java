@@ -0,0 +1,551 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.type.character.CharMember;
+import nom.bdezonia.zorbage.type.integer.int1.UnsignedInt1Member;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int32.SignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int32.UnsignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int64.SignedInt64Member;
+import nom.bdezonia.zorbage.type.integer.int64.UnsignedInt64Member;
+import nom.bdezonia.zorbage.type.integer.int8.SignedInt8Member;
+import nom.bdezonia.zorbage.type.integer.int8.UnsignedInt8Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+import nom.bdezonia.zorbage.type.string.FixedStringMember;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.Variable;
+import ucar.nc2.write.Nc4Chunking;
+import ucar.nc2.write.NetcdfFileFormat;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Writes one zorbage data source as one NetCDF variable. This undoes what
+ * reading does: zorbage axes are reversed back into NetCDF order, the Y axis
+ * is flipped back and zorbage types map back to NetCDF types. Unsigned types
+ * are written as NetCDF-4's unsigned types or, in NetCDF-3 files, as the
+ * signed type of the same size with an _Unsigned attribute. Values are
+ * gathered into row major slabs and written a slab at a time.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class Exporter {
+
+	// chunks of about a million values when no chunk shape is given
+	
+	private static final long DEFAULT_CHUNK_ELEMENTS = 1024 * 1024;
+	
+	private Exporter() { }
+	
+	// value is shaped like the values of data (a FixedStringMember needs the
+	//   capacity data was allocated with) and is used as scratch space.
+	
+	@SuppressWarnings("unchecked")
+	static
+	
+		<U> void write(URI fileURI, String variableName, U value, DimensionedDataSource<U> data, WriteOptions options)
+		
+			throws IOException
+	{
+		WriteOptions.Format format = options.getFormat();
+		
+		if (format == WriteOptions.Format.NETCDF4 && !nativeLibraryPresent())
+			throw new IOException("Cannot write "+fileURI+" as NetCDF-4: the netCDF-C library is not available."+
+									" Write it as NetCDF-3 instead.");
+		
+		Encoding encoding = encoding(value, format);
+		
+		if (encoding == null)
+			throw new IllegalArgumentException("Cannot write values of type "+value.getClass().getSimpleName());
+		
+		int rank = data.numDimensions();
+		
+		int[] shape = new int[rank];
+		for (int k = 0; k < rank; k++) {
+			long dim = data.dimension(k);
+			if (dim > Integer.MAX_VALUE)
+				throw new IllegalArgumentException("Dimension "+k+" is too large for NetCDF");
+			shape[rank-1-k] = (int) dim;
+		}
+		
+		long[] chunkShape = options.getChunkShape();
+		
+		if (chunkShape != null && chunkShape.length != rank)
+			throw new IllegalArgumentException("Chunk shape rank does not match rank "+rank+" of data source");
+		
+		if (format == WriteOptions.Format.NETCDF3 &&
+				(encoding.dataType == DataType.LONG || encoding.dataType == DataType.STRING))
+		{
+			throw new IllegalArgumentException("NetCDF-3 files cannot hold "+encoding.dataType+" values");
+		}
+		
+		String location = new File(fileURI).getPath();
+		
+		NetcdfFormatWriter.Builder builder = (format == WriteOptions.Format.NETCDF4) ?
+				NetcdfFormatWriter.createNewNetcdf4(NetcdfFileFormat.NETCDF4, location, new Chunking(options)) :
+				NetcdfFormatWriter.createNewNetcdf3(location);
+		
+		String[] dimNames = dimensionNames(data);
+		
+		for (int j = 0; j < rank; j++) {
+			builder.addDimension(dimNames[j], shape[j]);
+		}
+		
+		Variable.Builder<?> var = builder.addVariable(variableName, encoding.dataType, String.join(" ", dimNames));
+		
+		if (encoding.unsignedAttribute)
+			var.addAttribute(new Attribute("_Unsigned", "true"));
+		
+		String units = data.getValueUnit();
+		
+		if (units != null && !units.isEmpty())
+			var.addAttribute(new Attribute("units", units));
+		
+		int elementSize = Math.max(1, encoding.dataType.getSize());
+		
+		RowExtractor<U> extractor = (RowExtractor<U>) encoding.extractor;
+		
+		LayoutTransform layout = new LayoutTransform(shape);
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			// a scalar has no rows: its one value is written on its own
+			
+			if (rank == 0) {
+				
+				if (data.rawData().size() == 0)
+					return;
+				
+				Object values = java.lang.reflect.Array.newInstance(encoding.dataType.getPrimitiveClassType(), 1);
+				
+				extractor.copy(data.rawData(), 0, value, values, 0, 1);
+				
+				try {
+					
+					writer.write(variableName, new int[0], Array.factory(encoding.dataType, new int[0], values));
+					
+				} catch (InvalidRangeException e) {
+					
+					throw new IOException("Could not write "+variableName+": "+e.getMessage(), e);
+				}
+				
+				return;
+			}
+			
+			for (int[][] chunk : NetCDF.chunkPlan(shape, elementSize, options.getWriteBufferSize())) {
+				
+				int[] origin = chunk[0];
+				int[] extent = chunk[1];
+				
+				int count = 1;
+				for (int j = 0; j < rank; j++) {
+					count *= extent[j];
+				}
+				
+				if (count == 0)
+					continue;
+				
+				Object values = java.lang.reflect.Array.newInstance(encoding.dataType.getPrimitiveClassType(), count);
+				
+				extractChunk(data.rawData(), origin, extent, layout, extractor, value, values);
+				
+				try {
+					
+					writer.write(variableName, origin, Array.factory(encoding.dataType, extent, values));
+					
+				} catch (InvalidRangeException e) {
+					
+					throw new IOException("Could not write "+variableName+": "+e.getMessage(), e);
+				}
+			}
+		}
+	}
+	
+	// the reverse of NetCDF.copyChunk(): fill the row major java array values
+	//   with the part of the zorbage storage at origin with shape extent.
+	
+	private static
+	
+		<U> void extractChunk(IndexedDataSource<U> storage, int[] origin, int[] extent, LayoutTransform layout,
+								RowExtractor<U> extractor, U value, Object values)
+	{
+		int rank = extent.length;
+		
+		int last = rank - 1;
+		
+		int segment = extent[last];
+		
+		int rows = java.lang.reflect.Array.getLength(values) / segment;
+		
+		long src = layout.index(origin);
+		
+		int[] pos = new int[rank];
+		
+		for (int r = 0; r < rows; r++) {
+
+			extractor.copy(storage, src, value, values, r * segment, segment);
+			
+			for (int j = last - 1; j >= 0; j--) {
+				src += layout.stride(j);
+				if (++pos[j] < extent[j])
+					break;
+				src -= layout.stride(j) * extent[j];
+				pos[j] = 0;
+			}
+		}
+	}
+	
+	// netcdf dim j is named by zorbage axis rank-1-j. missing or repeated
+	//   axis names are replaced.
+	
+	private static String[] dimensionNames(DimensionedDataSource<?> data) {
+		
+		int rank = data.numDimensions();
+		
+		String[] names = new String[rank];
+		
+		Set<String> used = new HashSet<>();
+		
+		for (int j = 0; j < rank; j++) {
+			
+			String name = data.getAxisType(rank-1-j);
+			
+			if (name == null || name.trim().isEmpty() || used.contains(name.trim()))
+				name = "dim" + j;
+			
+			name = name.trim().replace(' ', '_');
+			
+			while (used.contains(name))
+				name = name + "_";
+			
+			used.add(name);
+			
+			names[j] = name;
+		}
+		
+		return names;
+	}
+	
+	// the netcdf4 artifact is only a runtime dependency so its iosp is found
+	//   by name. a missing artifact or native library both mean no NetCDF-4.
+	
+	private static boolean nativeLibraryPresent() {
+		
+		try {
+			
+			Class<?> iosp = Class.forName("ucar.nc2.jni.netcdf.Nc4Iosp");
+			
+			return Boolean.TRUE.equals(iosp.getMethod("isClibraryPresent").invoke(null));
+			
+		} catch (ReflectiveOperationException | LinkageError e) {
+			
+			return false;
+		}
+	}
+	
+	// how a zorbage type is stored in a NetCDF file
+	
+	private static final class Encoding {
+		
+		final DataType dataType;
+		final boolean unsignedAttribute;
+		final RowExtractor<?> extractor;
+		
+		Encoding(DataType dataType, boolean unsignedAttribute, RowExtractor<?> extractor) {
+			this.dataType = dataType;
+			this.unsignedAttribute = unsignedAttribute;
+			this.extractor = extractor;
+		}
+	}
+	
+	// the inverse of NetCDF.zorbageAlgebra() and NetCDF.rowCopier(). booleans
+	//   have no NetCDF type and are written as unsigned bytes. NetCDF-3 has no
+	//   unsigned types so there they are the signed type plus _Unsigned.
+	
+	private static Encoding encoding(Object type, WriteOptions.Format format) {
+		
+		boolean netcdf4 = (format == WriteOptions.Format.NETCDF4);
+		
+		DataType ubyte = netcdf4 ? DataType.UBYTE : DataType.BYTE;
+		DataType ushort = netcdf4 ? DataType.USHORT : DataType.SHORT;
+		DataType uint = netcdf4 ? DataType.UINT : DataType.INT;
+		DataType ulong = netcdf4 ? DataType.ULONG : DataType.LONG;
+		
+		boolean unsignedAttribute = !netcdf4;
+		
+		if (type instanceof UnsignedInt1Member)
+			return new Encoding(ubyte, unsignedAttribute, new RowExtractor<UnsignedInt1Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<UnsignedInt1Member> src, long srcPos, UnsignedInt1Member value, Object dst, int dstPos, int count) {
+					byte[] data = (byte[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (byte) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof SignedInt8Member)
+			return new Encoding(DataType.BYTE, false, new RowExtractor<SignedInt8Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<SignedInt8Member> src, long srcPos, SignedInt8Member value, Object dst, int dstPos, int count) {
+					byte[] data = (byte[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (byte) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof UnsignedInt8Member)
+			return new Encoding(ubyte, unsignedAttribute, new RowExtractor<UnsignedInt8Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<UnsignedInt8Member> src, long srcPos, UnsignedInt8Member value, Object dst, int dstPos, int count) {
+					byte[] data = (byte[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (byte) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof SignedInt16Member)
+			return new Encoding(DataType.SHORT, false, new RowExtractor<SignedInt16Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<SignedInt16Member> src, long srcPos, SignedInt16Member value, Object dst, int dstPos, int count) {
+					short[] data = (short[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (short) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof UnsignedInt16Member)
+			return new Encoding(ushort, unsignedAttribute, new RowExtractor<UnsignedInt16Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<UnsignedInt16Member> src, long srcPos, UnsignedInt16Member value, Object dst, int dstPos, int count) {
+					short[] data = (short[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (short) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof SignedInt32Member)
+			return new Encoding(DataType.INT, false, new RowExtractor<SignedInt32Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<SignedInt32Member> src, long srcPos, SignedInt32Member value, Object dst, int dstPos, int count) {
+					int[] data = (int[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (int) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof UnsignedInt32Member)
+			return new Encoding(uint, unsignedAttribute, new RowExtractor<UnsignedInt32Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<UnsignedInt32Member> src, long srcPos, UnsignedInt32Member value, Object dst, int dstPos, int count) {
+					int[] data = (int[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = (int) value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof SignedInt64Member)
+			return new Encoding(DataType.LONG, false, new RowExtractor<SignedInt64Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<SignedInt64Member> src, long srcPos, SignedInt64Member value, Object dst, int dstPos, int count) {
+					long[] data = (long[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof UnsignedInt64Member)
+			return new Encoding(ulong, unsignedAttribute, new RowExtractor<UnsignedInt64Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<UnsignedInt64Member> src, long srcPos, UnsignedInt64Member value, Object dst, int dstPos, int count) {
+					long[] data = (long[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = value.v().longValue();
+					}
+				}
+			
+			});
+		
+		if (type instanceof Float32Member)
+			return new Encoding(DataType.FLOAT, false, new RowExtractor<Float32Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<Float32Member> src, long srcPos, Float32Member value, Object dst, int dstPos, int count) {
+					float[] data = (float[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof Float64Member)
+			return new Encoding(DataType.DOUBLE, false, new RowExtractor<Float64Member>() {
+			
+				@Override
+				public void copy(IndexedDataSource<Float64Member> src, long srcPos, Float64Member value, Object dst, int dstPos, int count) {
+					double[] data = (double[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof CharMember)
+			return new Encoding(DataType.CHAR, false, new RowExtractor<CharMember>() {
+			
+				@Override
+				public void copy(IndexedDataSource<CharMember> src, long srcPos, CharMember value, Object dst, int dstPos, int count) {
+					char[] data = (char[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = value.v();
+					}
+				}
+			
+			});
+		
+		if (type instanceof FixedStringMember)
+			return new Encoding(DataType.STRING, false, new RowExtractor<FixedStringMember>() {
+			
+				@Override
+				public void copy(IndexedDataSource<FixedStringMember> src, long srcPos, FixedStringMember value, Object dst, int dstPos, int count) {
+					String[] data = (String[]) dst;
+					for (int i = 0; i < count; i++) {
+						src.get(srcPos+i, value);
+						data[dstPos+i] = value.v();
+					}
+				}
+			
+			});
+		
+		return null;
+	}
+	
+	// the requested chunk shape or whole rows of about a million values
+	
+	private static final class Chunking implements Nc4Chunking {
+		
+		private final WriteOptions options;
+		
+		Chunking(WriteOptions options) {
+			this.options = options;
+		}
+
+		@Override
+		public boolean isChunked(Variable v) {
+			return v.getRank() > 0;
+		}
+
+		@Override
+		public long[] computeChunking(Variable v) {
+			
+			int[] shape = v.getShape();
+			
+			int rank = shape.length;
+			
+			long[] chunk = new long[rank];
+			
+			long[] requested = options.getChunkShape();
+			
+			if (requested != null && requested.length == rank) {
+				
+				for (int j = 0; j < rank; j++) {
+					chunk[j] = Math.max(1, Math.min(requested[rank-1-j], shape[j]));
+				}
+			}
+			else {
+				
+				List<int[][]> plan = NetCDF.chunkPlan(shape, 1, DEFAULT_CHUNK_ELEMENTS);
+				
+				for (int j = 0; j < rank; j++) {
+					chunk[j] = Math.max(1, plan.get(0)[1][j]);
+				}
+			}
+			
+			return chunk;
+		}
+
+		@Override
+		public int getDeflateLevel(Variable v) {
+			return options.getDeflateLevel();
+		}
+
+		@Override
+		public boolean isShuffle(Variable v) {
+			return options.isShuffle();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+/**
+ * An ImportListener is told how long each phase of an import took, how
+ * much data it handled and which variables could not be read. Install one
+ * with {@link ReadOptions#setImportListener}. Large variables are decoded
+ * by several threads at once so implementations must be thread safe.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public interface ImportListener {
+
+	/**
+	 * The phases of an import.
+	 */
+	enum Phase {
+		
+		/** opening a file and parsing its header */
+		OPEN,
+		
+		/** reading (and decompressing) values from the file */
+		READ,
+		
+		/** copying values into zorbage storage */
+		CONVERT,
+		
+		/** applying scale_factor and add_offset after the copy */
+		RESCALE,
+		
+		/** adding a finished data source to a DataBundle */
+		MERGE
+	}
+	
+	/**
+	 * A listener that ignores everything. This is the default.
+	 */
+	ImportListener NONE = (source, variable, phase, nanos, bytes, allocatedBytes) -> { };
+	
+	/**
+	 * Called each time a phase completes.
+	 * 
+	 * @param source The file being read.
+	 * @param variable The full name of the variable. Null for OPEN.
+	 * @param phase The phase that completed.
+	 * @param nanos How long the phase took.
+	 * @param bytes The number of bytes of NetCDF data the phase handled or 0
+	 *   if it did not handle any.
+	 * @param allocatedBytes The number of bytes the thread allocated during
+	 *   the phase or -1 if the JVM can't report it.
+	 */
+	void phaseCompleted(String source, String variable, Phase phase, long nanos, long bytes, long allocatedBytes);
+	
+	/**
+	 * Called when readAllDatasets() skips a variable (or a whole file) it
+	 * could not read. The returned DataBundle lacks whatever failed. Does
+	 * nothing by default.
+	 * 
+	 * @param source The file being read.
+	 * @param variable The full name of the variable. Null when the file
+	 *   itself could not be read.
+	 * @param error Why the read failed.
+	 */
+	default void failed(String source, String variable, Throwable error) {
+	}
+}
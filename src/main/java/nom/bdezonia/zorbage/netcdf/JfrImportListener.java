@@ -0,0 +1,91 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * An ImportListener that emits a JDK Flight Recorder event for every import
+ * phase. Record with -XX:StartFlightRecording and look for the
+ * nom.bdezonia.zorbage.netcdf.ImportPhase events. Other metrics systems
+ * (Micrometer timers and counters for instance) can be fed the same way by
+ * implementing ImportListener.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class JfrImportListener implements ImportListener {
+
+	@Name("nom.bdezonia.zorbage.netcdf.ImportPhase")
+	@Label("NetCDF Import Phase")
+	@Category({"zorbage", "NetCDF"})
+	@Description("One phase of importing a NetCDF variable into zorbage")
+	static class ImportPhaseEvent extends Event {
+		
+		@Label("Source")
+		String source;
+		
+		@Label("Variable")
+		String variable;
+		
+		@Label("Phase")
+		String phase;
+		
+		@Label("Phase Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long phaseNanos;
+		
+		@Label("NetCDF Bytes")
+		@DataAmount
+		long bytes;
+		
+		@Label("Allocated Bytes")
+		@DataAmount
+		long allocatedBytes;
+	}
+	
+	@Override
+	public void phaseCompleted(String source, String variable, Phase phase, long nanos, long bytes, long allocatedBytes) {
+		
+		ImportPhaseEvent event = new ImportPhaseEvent();
+		
+		if (!event.isEnabled())
+			return;
+		
+		event.source = source;
+		event.variable = variable;
+		event.phase = phase.name();
+		event.phaseNanos = nanos;
+		event.bytes = bytes;
+		event.allocatedBytes = allocatedBytes;
+		
+		event.commit();
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+/**
+ * The mapping from NetCDF coordinates to positions in zorbage storage,
+ * compiled once per variable. Zorbage axes are the NetCDF axes reversed and
+ * the Y axis (the next to last NetCDF axis) is flipped. Both are affine in
+ * the NetCDF coordinates so a position is an offset plus one stride per
+ * NetCDF axis. Stepping a coordinate by one moves the position by that
+ * axis' stride; the Y stride is negative.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class LayoutTransform {
+
+	private final long[] strides;
+	private final long offset;
+	
+	/**
+	 * @param netcdfShape The shape of the whole NetCDF space being mapped.
+	 */
+	LayoutTransform(int[] netcdfShape) {
+		
+		int rank = netcdfShape.length;
+		
+		this.strides = new long[rank];
+		
+		long off = 0;
+		
+		if (rank > 0) {
+			
+			int last = rank - 1;
+			
+			// NetCDF rows are contiguous in zorbage storage
+			
+			strides[last] = 1;
+			
+			long span = netcdfShape[last];
+			
+			if (rank > 1) {
+				
+				int y = rank - 2;
+				
+				strides[y] = -span;
+				
+				off = span * (netcdfShape[y] - 1);
+				
+				span *= netcdfShape[y];
+				
+				for (int j = rank - 3; j >= 0; j--) {
+					strides[j] = span;
+					span *= netcdfShape[j];
+				}
+			}
+		}
+		
+		this.offset = off;
+	}
+	
+	/**
+	 * The zorbage storage position of a NetCDF coordinate.
+	 */
+	long index(int[] coord) {
+		long idx = offset;
+		for (int j = 0; j < strides.length; j++) {
+			idx += coord[j] * strides[j];
+		}
+		return idx;
+	}
+	
+	/**
+	 * How far the storage position moves when NetCDF coordinate dim grows by one.
+	 */
+	long stride(int dim) {
+		return strides[dim];
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.util.Arrays;
+
+import ucar.ma2.DataType;
+import ucar.nc2.Attribute;
+import ucar.nc2.Variable;
+
+/**
+ * The packed values of a variable that CF says are not data: its
+ * _FillValue, its missing_value(s) and anything outside valid_min,
+ * valid_max or valid_range. Values are tested before they are unpacked so
+ * a fill sentinel never gets scaled into a plausible looking number.
+ * <p>
+ * As CF says, a valid range whose type is that of scale_factor or
+ * add_offset rather than the variable's own type is in unpacked units.
+ * Values are unpacked before they are compared with such a range.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class MissingValues {
+
+	private final double[] sentinels;
+	private final double validMin;
+	private final double validMax;
+	private final boolean unpackedRange;
+	private final double scale;
+	private final double offset;
+	
+	private MissingValues(double[] sentinels, double validMin, double validMax,
+							boolean unpackedRange, double scale, double offset)
+	{
+		this.sentinels = sentinels;
+		this.validMin = validMin;
+		this.validMax = validMax;
+		this.unpackedRange = unpackedRange;
+		this.scale = scale;
+		this.offset = offset;
+	}
+	
+	/**
+	 * The missing values of var or null if it declares none.
+	 * 
+	 * @param var The variable whose attributes are examined.
+	 * @param unsigned True if the packed values are unsigned. Negative
+	 *   integer attribute values are then also matched as the unsigned value
+	 *   with the same bits.
+	 */
+	static MissingValues of(Variable var, boolean unsigned) {
+		
+		int bits = 8 * var.getElementSize();
+		
+		boolean integral = var.getDataType().isIntegral();
+		
+		double[] sentinels = new double[0];
+		
+		for (String name : new String[] {"_FillValue", "missing_value"}) {
+			
+			Attribute att = var.attributes().findAttribute(name);
+			
+			if (att == null || att.isString())
+				continue;
+			
+			for (int i = 0; i < att.getLength(); i++) {
+				
+				Number n = att.getNumericValue(i);
+				
+				if (n == null)
+					continue;
+				
+				double v = n.doubleValue();
+				
+				sentinels = add(sentinels, v);
+				
+				if (unsigned && integral && v < 0 && bits < 64)
+					sentinels = add(sentinels, v + Math.pow(2, bits));
+			}
+		}
+		
+		Attribute scaleAtt = var.attributes().findAttribute("scale_factor");
+		Attribute offsetAtt = var.attributes().findAttribute("add_offset");
+		
+		DataType packing = (scaleAtt != null) ? scaleAtt.getDataType() :
+							(offsetAtt != null) ? offsetAtt.getDataType() : null;
+		
+		double scale = (scaleAtt == null || scaleAtt.getNumericValue() == null) ? 1 :
+							scaleAtt.getNumericValue().doubleValue();
+		
+		double offset = (offsetAtt == null || offsetAtt.getNumericValue() == null) ? 0 :
+							offsetAtt.getNumericValue().doubleValue();
+		
+		Attribute range = var.attributes().findAttribute("valid_range");
+		Attribute min = var.attributes().findAttribute("valid_min");
+		Attribute max = var.attributes().findAttribute("valid_max");
+		
+		Attribute first = (range != null) ? range : (min != null) ? min : max;
+		
+		boolean unpackedRange = first != null && packing != null &&
+									first.getDataType() == packing && packing != var.getDataType();
+		
+		// unpacked bounds are never reinterpreted as unsigned
+		
+		boolean unsignedRange = unsigned && integral && !unpackedRange;
+		
+		double validMin = Double.NEGATIVE_INFINITY;
+		double validMax = Double.POSITIVE_INFINITY;
+		
+		if (range != null && !range.isString() && range.getLength() == 2) {
+			validMin = value(range, 0, unsignedRange, bits, validMin);
+			validMax = value(range, 1, unsignedRange, bits, validMax);
+		}
+		
+		if (min != null && !min.isString())
+			validMin = value(min, 0, unsignedRange, bits, validMin);
+		
+		if (max != null && !max.isString())
+			validMax = value(max, 0, unsignedRange, bits, validMax);
+		
+		if (sentinels.length == 0 && validMin == Double.NEGATIVE_INFINITY && validMax == Double.POSITIVE_INFINITY)
+			return null;
+		
+		return new MissingValues(sentinels, validMin, validMax, unpackedRange, scale, offset);
+	}
+	
+	/**
+	 * Returns true if a packed value is not data. NaN is always missing.
+	 */
+	boolean isMissing(double packed) {
+		
+		if (Double.isNaN(packed))
+			return true;
+		
+		double v = unpackedRange ? packed * scale + offset : packed;
+		
+		if (v < validMin || v > validMax)
+			return true;
+		
+		for (int i = 0; i < sentinels.length; i++) {
+			if (packed == sentinels[i])
+				return true;
+		}
+		
+		return false;
+	}
+	
+	private static double value(Attribute att, int i, boolean unsigned, int bits, double defaultValue) {
+		
+		Number n = att.getNumericValue(i);
+		
+		if (n == null)
+			return defaultValue;
+		
+		double v = n.doubleValue();
+		
+		if (unsigned && v < 0 && bits < 64)
+			v += Math.pow(2, bits);
+		
+		return v;
+	}
+	
+	private static double[] add(double[] values, double v) {
+		double[] result = Arrays.copyOf(values, values.length + 1);
+		result[values.length] = v;
+		return result;
+	}
+}
@@ -0,0 +1,185 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.nio.Buffer;
+
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+
+/**
+ * An IndexedDataSource over the java array a NetCDF variable was read into
+ * (or the mapped file it is stored in), left in its NetCDF row major order.
+ * Indices are in zorbage order, exactly like the storage
+ * {@link NetCDF#readAllDatasets} fills: each access maps its index through
+ * the axis reversal and Y flip instead of the values being reordered into a
+ * second buffer. NetCDF rows are zorbage rows so only the row number is
+ * remapped.
+ * <p>
+ * Duplicates are independent copies: the values are copied into a new
+ * array. Views of a mapped file are read only: set() throws
+ * ReadOnlyBufferException. Their duplicates share the mapping since
+ * neither can change it.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class NativeOrderStorage<U>
+
+	implements IndexedDataSource<U>
+{
+	@SuppressWarnings("rawtypes")
+	private final Allocatable type;
+	private final ArrayAccess access;
+	private final Object array;
+	private final long size;
+	private final long rowLength;
+	private final long rowsPerPlane;
+
+	@SuppressWarnings("rawtypes")
+	private NativeOrderStorage(Allocatable type, ArrayAccess access, Object array, long size, long rowLength, long rowsPerPlane) {
+		this.type = type;
+		this.access = access;
+		this.array = array;
+		this.size = size;
+		this.rowLength = rowLength;
+		this.rowsPerPlane = rowsPerPlane;
+	}
+	
+	/**
+	 * Make a view of a 1-d java array holding values of a NetCDF space of
+	 * the given shape in row major order. Returns null if the type and the
+	 * array do not go together.
+	 */
+	@SuppressWarnings("rawtypes")
+	static <U> NativeOrderStorage<U> of(Allocatable type, Object array, int[] netcdfShape) {
+		
+		ArrayAccess access = ArrayAccess.of(type, array);
+		
+		if (access == null)
+			return null;
+		
+		return of(type, access, array, java.lang.reflect.Array.getLength(array), netcdfShape);
+	}
+	
+	/**
+	 * Make a view of a typed buffer holding values of a NetCDF space of the
+	 * given shape in row major order, such as a memory mapped classic format
+	 * variable. The view is read only when the buffer is. Returns null if the
+	 * type and the buffer do not go together.
+	 */
+	@SuppressWarnings("rawtypes")
+	static <U> NativeOrderStorage<U> of(Allocatable type, Buffer buffer, int[] netcdfShape) {
+		
+		ArrayAccess access = ArrayAccess.of(type, buffer);
+		
+		if (access == null)
+			return null;
+		
+		return of(type, access, buffer, buffer.limit(), netcdfShape);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private static <U> NativeOrderStorage<U> of(Allocatable type, ArrayAccess access, Object data, long size, int[] netcdfShape) {
+		
+		int rank = netcdfShape.length;
+		
+		long rowLength = (rank > 0) ? netcdfShape[rank-1] : 1;
+		
+		long rowsPerPlane = (rank > 1) ? netcdfShape[rank-2] : 1;
+		
+		return new NativeOrderStorage<U>(type, access, data, size, rowLength, rowsPerPlane);
+	}
+	
+	@Override
+	public NativeOrderStorage<U> duplicate() {
+		
+		if (array instanceof Buffer && ((Buffer) array).isReadOnly())
+			return new NativeOrderStorage<U>(type, access, array, size, rowLength, rowsPerPlane);
+		
+		// still in NetCDF order so the same access and row mapping apply
+		
+		Object copy;
+		
+		if (array instanceof Buffer) {
+			
+			copy = java.lang.reflect.Array.newInstance(ArrayAccess.component((Buffer) array), (int) size);
+			
+			ArrayAccess.copy((Buffer) array, 0, copy, 0, (int) size);
+		}
+		else {
+			
+			copy = java.lang.reflect.Array.newInstance(array.getClass().getComponentType(), (int) size);
+			
+			System.arraycopy(array, 0, copy, 0, (int) size);
+		}
+		
+		return new NativeOrderStorage<U>(type, ArrayAccess.of(type, copy), copy, size, rowLength, rowsPerPlane);
+	}
+
+	@Override
+	public void set(long index, U value) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		access.set(array, position(index), value);
+	}
+
+	@Override
+	public void get(long index, U value) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		access.get(array, position(index), value);
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public StorageConstruction storageType() {
+		return StorageConstruction.MEM_ARRAY;
+	}
+
+	@Override
+	public boolean accessWithOneThread() {
+		return false;
+	}
+	
+	// the zorbage row of an index is the Y flipped NetCDF row
+	
+	private int position(long index) {
+		
+		long row = index / rowLength;
+		
+		long x = index - (row * rowLength);
+		
+		long plane = row / rowsPerPlane;
+		
+		long y = row - (plane * rowsPerPlane);
+		
+		return (int) (((plane * rowsPerPlane) + (rowsPerPlane - 1 - y)) * rowLength + x);
+	}
+}
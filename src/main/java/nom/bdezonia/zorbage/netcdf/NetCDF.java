@@ -25,15 +25,30 @@ package nom.bdezonia.zorbage.netcdf;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.Buffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 
 import nom.bdezonia.zorbage.algebra.Addition;
 import nom.bdezonia.zorbage.algebra.Algebra;
 import nom.bdezonia.zorbage.algebra.Allocatable;
 import nom.bdezonia.zorbage.algebra.G;
-import nom.bdezonia.zorbage.algorithm.GridIterator;
 import nom.bdezonia.zorbage.algorithm.ScaleByDouble;
 import nom.bdezonia.zorbage.algorithm.TransformWithConstant;
 import nom.bdezonia.zorbage.misc.DataBundle;
@@ -42,9 +57,6 @@ import nom.bdezonia.zorbage.data.DimensionedDataSource;
 import nom.bdezonia.zorbage.data.DimensionedStorage;
 import nom.bdezonia.zorbage.data.NdData;
 import nom.bdezonia.zorbage.datasource.IndexedDataSource;
-import nom.bdezonia.zorbage.procedure.Procedure2;
-import nom.bdezonia.zorbage.sampling.IntegerIndex;
-import nom.bdezonia.zorbage.sampling.SamplingIterator;
 import nom.bdezonia.zorbage.tuple.Tuple2;
 import nom.bdezonia.zorbage.type.character.CharMember;
 import nom.bdezonia.zorbage.type.integer.int1.UnsignedInt1Member;
@@ -60,9 +72,14 @@ import nom.bdezonia.zorbage.type.real.float32.Float32Member;
 import nom.bdezonia.zorbage.type.real.float64.Float64Member;
 import nom.bdezonia.zorbage.type.string.FixedStringMember;
 import ucar.ma2.Array;
+import ucar.ma2.ArrayChar;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Range;
+import ucar.ma2.Section;
 import ucar.nc2.Attribute;
+import ucar.nc2.Group;
 import ucar.nc2.NetcdfFile;
-import ucar.nc2.NetcdfFiles;
 import ucar.nc2.Variable;
 
 /**
@@ -99,6 +116,1663 @@ public class NetCDF {
 	 * 
 	 * @param fileURI
 	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readAllDatasets(URI fileURI)
+	{
+		return NetCDF.<T,U>readAllDatasets(fileURI, new ReadOptions());
+	}
+
+	/**
+	 * Read all the variables of a NetCDF file using the given executor to
+	 * decode several variables at once. The variables are merged into the
+	 * DataBundle in the same order that readAllDatasets(URI) merges them.
+	 * Each concurrently running task uses its own NetcdfFile handle since
+	 * NetcdfFile is not thread safe. On Java 21 or later passing
+	 * Executors.newVirtualThreadPerTaskExecutor() is fine.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param executor The executor that runs the per variable tasks. It is not
+	 *   shut down by this method.
+	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readAllDatasets(URI fileURI, ExecutorService executor)
+	{
+		ReadOptions options = new ReadOptions();
+		
+		options.setVariableExecutor(executor);
+		
+		return NetCDF.<T,U>readAllDatasets(fileURI, options);
+	}
+
+	/**
+	 * Read all the variables of a NetCDF file decoding up to parallelism
+	 * variables at once.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param parallelism The number of threads to use.
+	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readAllDatasets(URI fileURI, int parallelism)
+	{
+		if (parallelism < 1)
+			throw new IllegalArgumentException("parallelism must be at least 1");
+		
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		
+		try {
+		
+			return NetCDF.<T,U>readAllDatasets(fileURI, executor);
+			
+		} finally {
+			
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Read the variables of a NetCDF file that pass a filter. Other variables
+	 * are never read. Coordinate variables are read if they pass the filter.
+	 * For example to read only 3-d float variables:
+	 * <pre>
+	 *   NetCDF.readAllDatasets(uri, v -&gt; v.getRank() == 3 &amp;&amp; v.getDataType() == DataType.FLOAT);
+	 * </pre>
+	 * Use readAllDatasets(URI, ReadOptions) with
+	 * {@link ReadOptions#setSkipCoordinateVariables} to leave them out.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param filter The test a variable must pass to be read.
+	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readAllDatasets(URI fileURI, Predicate<Variable> filter)
+	{
+		ReadOptions options = new ReadOptions();
+		
+		options.setVariableFilter(filter);
+		
+		return NetCDF.<T,U>readAllDatasets(fileURI, options);
+	}
+
+	/**
+	 * Read the named variables of a NetCDF file. A variable is read if its
+	 * full name or its short name is in the set. Other variables are never
+	 * read. Coordinate variables are read if they are named.
+	 * Use readAllDatasets(URI, ReadOptions) with
+	 * {@link ReadOptions#setSkipCoordinateVariables} to leave them out.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableNames The names of the variables to read.
+	 * @return
+	 */
+	@SuppressWarnings("deprecation")
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readAllDatasets(URI fileURI, Set<String> variableNames)
+	{
+		ReadOptions options = new ReadOptions();
+		
+		options.setVariableFilter(v -> variableNames.contains(v.getFullName()) ||
+										variableNames.contains(v.getShortName()));
+		
+		return NetCDF.<T,U>readAllDatasets(fileURI, options);
+	}
+
+	/**
+	 * Read the variables of a NetCDF file the options select. Variables that
+	 * cannot be read are skipped and reported to the options' ImportListener
+	 * (see {@link ImportListener#failed}). Use readAllDatasetsAsync() to have
+	 * any failure fail the whole read instead.
+	 * 
+	 * @param fileURI
+	 * @param options
+	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readAllDatasets(URI fileURI, ReadOptions options)
+	{
+		try {
+			
+			if (options.getVariableExecutor() != null)
+				return NetCDF.<T,U>readConcurrently(fileURI, options, false);
+			
+			return NetCDF.<T,U>readBundle(fileURI, options, false);
+		}
+		catch (IOException e) {
+			
+			System.out.println("Exception occurred : " + e);
+			
+			options.getImportListener().failed(fileURI.toString(), null, e);
+		}
+		
+		return new DataBundle();
+	}
+	
+	// read the selected variables one after another. when strict any variable
+	//   that cannot be read fails the whole file. otherwise it is reported and
+	//   skipped.
+	
+	static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readBundle(URI fileURI, ReadOptions options, boolean strict)
+		
+			throws IOException
+	{
+		DataBundle bundle = new DataBundle();
+	
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+		
+			List<Variable> vars = variables(subtree(lease.file(), options));
+
+			for (Variable var : vars) {
+			
+				if (!selected(var, options))
+					continue;
+				
+				Tuple2<T, DimensionedDataSource<U>> dataSource;
+				
+				try {
+					
+					dataSource = readVar(var, fileURI, lease.classic(), null, options);
+				
+				} catch (IOException e) {
+				
+					if (strict)
+						throw e;
+					
+					System.out.println("Could not read an Array from a Variable : " + e);
+					
+					options.getImportListener().failed(fileURI.toString(), var.getFullName(), e);
+					
+					continue;
+				}
+				
+				if (dataSource == null)
+					continue;
+				
+				PhaseClock clock = PhaseClock.start(options);
+				
+				merge(bundle, dataSource, var.getDataType().toString());
+				
+				clock.stop(fileURI.toString(), var.getFullName(), ImportListener.Phase.MERGE, 0);
+			}
+		}
+		
+		return bundle;
+	}
+
+	// read the selected variables on the options' variable executor. strict
+	//   works as it does for readBundle().
+	
+	private static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readConcurrently(URI fileURI, ReadOptions options, boolean strict)
+		
+			throws IOException
+	{
+		ExecutorService executor = options.getVariableExecutor();
+		
+		DataBundle bundle = new DataBundle();
+		
+		List<String> dataTypes = new ArrayList<>();
+		
+		List<String> varNames = new ArrayList<>();
+		
+		List<String> escapedNames = new ArrayList<>();
+		
+		// give the handle back before the tasks start so one of them can use it
+		
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			for (Variable var : variables(subtree(lease.file(), options))) {
+				
+				if (!selected(var, options))
+					continue;
+				
+				dataTypes.add(var.getDataType().toString());
+				
+				varNames.add(var.getFullName());
+				
+				escapedNames.add(var.getFullNameEscaped());
+			}
+		}
+		
+		List<Future<Tuple2<T, DimensionedDataSource<U>>>> futures = new ArrayList<>();
+		
+		for (String varName : escapedNames) {
+			
+			futures.add(executor.submit(() -> NetCDF.<T,U>readVar(fileURI, varName, options)));
+		}
+		
+		try {
+			
+			// merge in file order so results match the sequential reader
+			
+			for (int i = 0; i < futures.size(); i++) {
+				
+				Tuple2<T, DimensionedDataSource<U>> dataSource;
+				
+				try {
+					
+					dataSource = futures.get(i).get();
+					
+				} catch (ExecutionException e) {
+					
+					if (strict)
+						throw failure(e, varNames.get(i));
+					
+					System.out.println("Could not read an Array from a Variable : " + e.getCause());
+					
+					options.getImportListener().failed(fileURI.toString(), varNames.get(i), e.getCause());
+					
+					continue;
+				}
+				
+				if (dataSource == null)
+					continue;
+				
+				PhaseClock clock = PhaseClock.start(options);
+				
+				merge(bundle, dataSource, dataTypes.get(i));
+				
+				clock.stop(fileURI.toString(), varNames.get(i), ImportListener.Phase.MERGE, 0);
+			}
+		}
+		catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+			throw new InterruptedIOException("Interrupted while reading : " + fileURI);
+		}
+		finally {
+			
+			// reads still running after a failure are not wanted
+			
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+		
+		return bundle;
+	}
+	
+	// the IOException a failed read task should surface as
+	
+	private static IOException failure(ExecutionException e, String name) {
+		
+		Throwable cause = e.getCause();
+		
+		if (cause instanceof IOException)
+			return (IOException) cause;
+		
+		if (cause instanceof Error)
+			throw (Error) cause;
+		
+		return new IOException("Could not read " + name, cause);
+	}
+	
+	/**
+	 * Read the variables of a hierarchical (NetCDF-4) file one group at a
+	 * time. Each group's own variables go into their own DataBundle so
+	 * variables with the same name in different groups never collide. Only
+	 * the groups under {@link ReadOptions#setGroupPath(String)} are read.
+	 * When the options have a variable executor the groups are read
+	 * concurrently.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param options
+	 * @return One bundle per group keyed by the group's full name ("" for the
+	 *   root group) in depth first order.
+	 * @throws IOException If the file or any of its selected variables cannot
+	 *   be read. Groups still being read are cancelled.
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		Map<String, DataBundle> readGroups(URI fileURI, ReadOptions options)
+		
+			throws IOException
+	{
+		Map<String, DataBundle> bundles = new LinkedHashMap<>();
+		
+		List<String> groupNames = new ArrayList<>();
+		
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			collectGroups(subtree(lease.file(), options), groupNames);
+		}
+		
+		ExecutorService executor = options.getVariableExecutor();
+		
+		if (executor == null) {
+			
+			for (String groupName : groupNames) {
+				
+				bundles.put(groupName, NetCDF.<T,U>readGroup(fileURI, groupName, options));
+			}
+			
+			return bundles;
+		}
+		
+		List<Future<DataBundle>> futures = new ArrayList<>();
+		
+		for (String groupName : groupNames) {
+			
+			futures.add(executor.submit(() -> NetCDF.<T,U>readGroup(fileURI, groupName, options)));
+		}
+		
+		try {
+			
+			for (int i = 0; i < futures.size(); i++) {
+				
+				try {
+					
+					bundles.put(groupNames.get(i), futures.get(i).get());
+					
+				} catch (ExecutionException e) {
+					
+					throw failure(e, "group " + groupNames.get(i));
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+			throw new InterruptedIOException("Interrupted while reading : " + fileURI);
+		}
+		finally {
+			
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+		}
+		
+		return bundles;
+	}
+	
+	// read the variables that belong directly to one group through a handle
+	//   of its own
+	
+	private static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+		
+		DataBundle readGroup(URI fileURI, String groupName, ReadOptions options)
+		
+			throws IOException
+	{
+		DataBundle bundle = new DataBundle();
+		
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			Group group = lease.file().findGroup(groupName);
+			
+			if (group == null)
+				throw new IOException("Group "+groupName+" not found in "+fileURI);
+			
+			for (Variable var : group.getVariables()) {
+				
+				if (!selected(var, options))
+					continue;
+				
+				Tuple2<T, DimensionedDataSource<U>> dataSource = readVar(var, fileURI, lease.classic(), null, options);
+				
+				if (dataSource == null)
+					continue;
+				
+				PhaseClock clock = PhaseClock.start(options);
+				
+				merge(bundle, dataSource, var.getDataType().toString());
+				
+				clock.stop(fileURI.toString(), var.getFullName(), ImportListener.Phase.MERGE, 0);
+			}
+		}
+		
+		return bundle;
+	}
+	
+	// the group the options limit reading to
+	
+	private static Group subtree(NetcdfFile file, ReadOptions options) {
+		
+		String path = options.getGroupPath();
+		
+		if (path == null)
+			return file.getRootGroup();
+		
+		// full names of groups have no leading slash
+		
+		while (path.startsWith("/"))
+			path = path.substring(1);
+		
+		Group group = path.isEmpty() ? file.getRootGroup() : file.findGroup(path);
+		
+		if (group == null)
+			throw new IllegalArgumentException("Group "+options.getGroupPath()+" not found in "+file.getLocation());
+		
+		return group;
+	}
+	
+	// the variables of a group and all of its subgroups, depth first
+	
+	private static List<Variable> variables(Group group) {
+		
+		List<Variable> vars = new ArrayList<>(group.getVariables());
+		
+		for (Group child : group.getGroups()) {
+			vars.addAll(variables(child));
+		}
+		
+		return vars;
+	}
+	
+	private static void collectGroups(Group group, List<String> names) {
+		
+		names.add(group.getFullName());
+		
+		for (Group child : group.getGroups()) {
+			collectGroups(child, names);
+		}
+	}
+	
+	private static boolean selected(Variable var, ReadOptions options) {
+		
+		if (options.isSkipCoordinateVariables() && var.isCoordinateVariable())
+			return false;
+		
+		Predicate<Variable> filter = options.getVariableFilter();
+		
+		return filter == null || filter.test(var);
+	}
+	
+	// read one variable through a leased handle. NetcdfFile is not thread safe
+	//   so a handle is used by only one task at a time.
+	
+	private static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>> readVar(URI fileURI, String varName, ReadOptions options)
+		
+			throws IOException
+	{
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			Variable var = lease.file().findVariable(varName);
+			
+			if (var == null)
+				throw new IOException("Variable "+varName+" not found in "+fileURI);
+			
+			return readVar(var, fileURI, lease.classic(), null, options);
+		}
+	}
+
+	/**
+	 * 
+	 * @param filename
+	 * @param variableName
+	 * @param origin
+	 * @param shape
+	 * @param stride
+	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			readVariable(String filename, String variableName, int[] origin, int[] shape, int[] stride)
+	{
+		try {
+		
+			URI uri = new URI("file", null, new File(filename).getAbsolutePath(), null);
+			
+			return readVariable(uri, variableName, origin, shape, stride);
+	
+		} catch (URISyntaxException e) {
+			
+			throw new IllegalArgumentException("Bad name for file: "+e.getMessage());
+		}
+	}
+
+	/**
+	 * Read a hyperslab of one variable from a NetCDF file. Only the requested
+	 * values are read from disk. The returned data source has the same axis
+	 * ordering, Y flip, and dimension normalization as the data sources made
+	 * by readAllDatasets().
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to read.
+	 * @param origin The first NetCDF coordinate to read along each dimension.
+	 * @param shape The span of NetCDF coordinates to read along each
+	 *   dimension, as in ucar.ma2.Section: the last coordinate read is at
+	 *   most origin + shape - 1. With a stride s, ceil(shape / s) values are
+	 *   read along the dimension, not shape values.
+	 * @param stride The step between values along each dimension. Can be null
+	 *   in which case every value is read.
+	 * @return The algebra and the data source containing the requested values.
+	 *   Returns null if the file could not be read or the variable's type is
+	 *   not supported.
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			readVariable(URI fileURI, String variableName, int[] origin, int[] shape, int[] stride)
+	{
+		return NetCDF.<T,U>readVariable(fileURI, variableName, origin, shape, stride, new ReadOptions());
+	}
+
+	/**
+	 * Read a hyperslab of one variable from a NetCDF file as described in
+	 * readVariable(URI, String, int[], int[], int[]) using the given options.
+	 * 
+	 * @param fileURI
+	 * @param variableName
+	 * @param origin
+	 * @param shape
+	 * @param stride
+	 * @param options
+	 * @return
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			readVariable(URI fileURI, String variableName, int[] origin, int[] shape, int[] stride, ReadOptions options)
+	{
+		try {
+			
+			return NetCDF.<T,U>readSlab(fileURI, variableName, origin, shape, stride, options);
+		}
+		catch (IOException e) {
+			
+			System.out.println("Exception occurred : " + e);
+		}
+		
+		return null;
+	}
+
+	/**
+	 * Read a hyperslab of one variable as described in
+	 * readVariable(URI, String, int[], int[], int[], ReadOptions) without
+	 * blocking the calling thread. The read runs on the given executor.
+	 * Cancelling the returned future stops the read before the next chunk
+	 * is decoded.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to read.
+	 * @param origin The first NetCDF coordinate to read along each dimension.
+	 * @param shape The span of NetCDF coordinates to read along each
+	 *   dimension. See readVariable(URI, String, int[], int[], int[]).
+	 * @param stride The step between values along each dimension. Can be null.
+	 * @param options The options to read with.
+	 * @param executor The executor the read runs on.
+	 * @return A future holding the algebra and the data source. It holds null
+	 *   if the variable's type is not supported and completes exceptionally
+	 *   if the file could not be read.
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		CompletableFuture<Tuple2<T, DimensionedDataSource<U>>>
+		
+			readVariableAsync(URI fileURI, String variableName, int[] origin, int[] shape, int[] stride,
+								ReadOptions options, Executor executor)
+	{
+		return ReadTask.submit(() -> NetCDF.<T,U>readSlab(fileURI, variableName, origin, shape, stride, options), executor);
+	}
+
+	/**
+	 * Read the selected variables of a NetCDF file as readAllDatasets(URI,
+	 * ReadOptions) does without blocking the calling thread. The variables
+	 * are read one after another on the given executor; the options'
+	 * variable executor is not used. Cancelling the returned future stops
+	 * the read before the next chunk is decoded.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param options The options to read with.
+	 * @param executor The executor the read runs on.
+	 * @return A future holding the data read. It completes exceptionally if
+	 *   any selected variable could not be read.
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		CompletableFuture<DataBundle> readAllDatasetsAsync(URI fileURI, ReadOptions options, Executor executor)
+	{
+		return ReadTask.submit(() -> NetCDF.<T,U>readBundle(fileURI, options, true), executor);
+	}
+	
+	private static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			readSlab(URI fileURI, String variableName, int[] origin, int[] shape, int[] stride, ReadOptions options)
+			
+			throws IOException
+	{
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			Variable var = lease.file().findVariable(variableName);
+			
+			if (var == null)
+				throw new IllegalArgumentException("Variable "+variableName+" not found in "+fileURI);
+			
+			Section section = section(var, origin, shape, stride);
+			
+			return readVar(var, fileURI, lease.classic(), section, options);
+		}
+	}
+	
+	/**
+	 * Read a small version of a variable for quick looks. Each NetCDF axis
+	 * is reduced to at most its target size by an integer step. See
+	 * readPreview(URI, String, int[], boolean, ReadOptions).
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to preview.
+	 * @param targetShape The most values wanted along each NetCDF axis.
+	 * @param average True to average blocks of values rather than sample them.
+	 * @return The preview or null if it could not be read.
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			readPreview(URI fileURI, String variableName, int[] targetShape, boolean average)
+	{
+		return NetCDF.<T,U>readPreview(fileURI, variableName, targetShape, average, new ReadOptions());
+	}
+
+	/**
+	 * Read a small version of a variable for quick looks. Each NetCDF axis
+	 * is reduced to at most its target size by an integer step. Without
+	 * averaging only every step'th value is read through a strided section
+	 * (nearest neighbor), so the cost is proportional to the preview's size.
+	 * With averaging every value is read, a chunk at a time, and each
+	 * preview value is the mean of the values in its block that are not NaN,
+	 * _FillValue, missing_value or outside the variable's valid range. Averaged
+	 * previews of numeric variables are 64 bit floats. Axes and Y flipping
+	 * match readAllDatasets.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to preview.
+	 * @param targetShape The most values wanted along each NetCDF axis. A
+	 *   value less than 1 keeps the axis whole.
+	 * @param average True to average blocks of values rather than sample them.
+	 * @param options
+	 * @return The preview or null if it could not be read.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			readPreview(URI fileURI, String variableName, int[] targetShape, boolean average, ReadOptions options)
+	{
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			Variable var = lease.file().findVariable(variableName);
+			
+			if (var == null)
+				throw new IllegalArgumentException("Variable "+variableName+" not found in "+fileURI);
+			
+			int rank = var.getRank();
+			
+			if (targetShape.length != rank)
+				throw new IllegalArgumentException("Preview rank does not match rank "+rank+" of variable "+var.getShortName());
+			
+			int[] shape = var.getShape();
+			
+			int[] step = new int[rank];
+			int[] previewShape = new int[rank];
+			for (int i = 0; i < rank; i++) {
+				int target = (targetShape[i] < 1) ? shape[i] : Math.min(targetShape[i], shape[i]);
+				step[i] = (target == 0) ? 1 : (shape[i] + target - 1) / target;
+				previewShape[i] = (shape[i] + step[i] - 1) / step[i];
+			}
+			
+			if (average && var.getDataType().isNumeric()) {
+				
+				double[] means = blockAverages(var, fileURI, step, previewShape, options);
+				
+				Algebra<?,Allocatable> algebra = zorbageAlgebra("double");
+				
+				Allocatable type = algebra.construct();
+				
+				long[] dims = zorbageDims(previewShape);
+				
+				IndexedDataSource<Object> storage = DimensionedStorage.allocate(type, dims).rawData();
+				
+				copyChunk(var, means, means.length, new int[rank], previewShape, new LayoutTransform(previewShape),
+							(RowCopier<Object>) rowCopier("double"), type, storage);
+				
+				DimensionedDataSource<U> finalDS = wrap(var, fileURI, dims, zorbageAxisLabels(var), (IndexedDataSource<U>) storage);
+				
+				PhaseClock clock = PhaseClock.start(options);
+				
+				rescale(var, (T) algebra, (IndexedDataSource<U>) storage);
+				
+				clock.stop(fileURI.toString(), var.getFullName(), ImportListener.Phase.RESCALE, 0);
+				
+				return new Tuple2<T,DimensionedDataSource<U>>((T) algebra, finalDS);
+			}
+			
+			int[] origin = new int[rank];
+			int[] extent = new int[rank];
+			for (int i = 0; i < rank; i++) {
+				extent[i] = (previewShape[i] == 0) ? 0 : (previewShape[i] - 1) * step[i] + 1;
+			}
+			
+			return readVar(var, fileURI, lease.classic(), section(var, origin, extent, step), options);
+		}
+		catch (IOException e) {
+			
+			System.out.println("Exception occurred : " + e);
+		}
+		
+		return null;
+	}
+	
+	// stream a variable in chunks no bigger than the read buffer, summing each
+	//   value into the preview cell its block maps to. the result is in netcdf
+	//   row major order.
+	
+	private static double[] blockAverages(Variable var, URI fileURI, int[] step, int[] previewShape, ReadOptions options)
+		throws IOException
+	{
+		int rank = previewShape.length;
+		
+		long cells = 1;
+		for (int i = 0; i < rank; i++) {
+			cells *= previewShape[i];
+		}
+		
+		if (cells > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Preview of "+var.getShortName()+" is too large");
+		
+		double[] sums = new double[(int) cells];
+		int[] counts = new int[(int) cells];
+		
+		// fill and missing values (and NaN) do not count toward a block's mean
+		
+		MissingValues missing = MissingValues.of(var, isUnsigned(var));
+		
+		if (rank == 0) {
+			double v = var.read().getDouble(0);
+			if (!skipped(v, missing)) {
+				sums[0] = v;
+				counts[0] = 1;
+			}
+		}
+		else {
+			
+			int[] cellStride = new int[rank];
+			int stride = 1;
+			for (int i = rank - 1; i >= 0; i--) {
+				cellStride[i] = stride;
+				stride *= previewShape[i];
+			}
+			
+			int last = rank - 1;
+			
+			String source = fileURI.toString();
+			
+			String varName = var.getFullName();
+			
+			for (int[][] chunk : chunkPlan(var.getShape(), var.getElementSize(), options.getReadBufferSize())) {
+				
+				int[] origin = chunk[0];
+				int[] shape = chunk[1];
+				
+				PhaseClock clock = PhaseClock.start(options);
+				
+				Array array;
+				
+				try {
+					
+					array = var.read(origin, shape);
+					
+				} catch (InvalidRangeException e) {
+					
+					throw new IllegalArgumentException("Bad chunk of variable "+var.getShortName()+": "+e.getMessage());
+				}
+				
+				long bytes = array.getSizeBytes();
+				
+				clock.stop(source, varName, ImportListener.Phase.READ, bytes);
+				
+				clock = PhaseClock.start(options);
+				
+				double[] values = (double[]) array.get1DJavaArray(DataType.DOUBLE);
+				
+				int rowLength = shape[last];
+				
+				int[] pos = new int[rank];
+				
+				for (int base = 0; base < values.length; base += rowLength) {
+					
+					int cellBase = 0;
+					for (int j = 0; j < last; j++) {
+						cellBase += ((origin[j] + pos[j]) / step[j]) * cellStride[j];
+					}
+					
+					for (int k = 0; k < rowLength; k++) {
+						double v = values[base + k];
+						if (skipped(v, missing))
+							continue;
+						int cell = cellBase + (origin[last] + k) / step[last];
+						sums[cell] += v;
+						counts[cell]++;
+					}
+					
+					for (int j = last - 1; j >= 0; j--) {
+						if (++pos[j] < shape[j])
+							break;
+						pos[j] = 0;
+					}
+				}
+				
+				clock.stop(source, varName, ImportListener.Phase.CONVERT, bytes);
+			}
+		}
+		
+		for (int i = 0; i < sums.length; i++) {
+			sums[i] = (counts[i] == 0) ? Double.NaN : sums[i] / counts[i];
+		}
+		
+		return sums;
+	}
+	
+	private static boolean skipped(double v, MissingValues missing) {
+		return (missing == null) ? Double.isNaN(v) : missing.isMissing(v);
+	}
+	
+	// shape is the span covered along each dim, not the number of values:
+	//   Section reads origin, origin + stride, ... up to origin + shape - 1
+	
+	private static Section section(Variable var, int[] origin, int[] shape, int[] stride) {
+		
+		int rank = var.getRank();
+		
+		if (origin.length != rank || shape.length != rank || (stride != null && stride.length != rank))
+			throw new IllegalArgumentException("Section rank does not match rank "+rank+" of variable "+var.getShortName());
+		
+		try {
+		
+			Section section = (stride == null) ? new Section(origin, shape) : new Section(origin, shape, stride);
+			
+			String error = section.checkInRange(var.getShape());
+			
+			if (error != null)
+				throw new IllegalArgumentException(error);
+			
+			return section;
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IllegalArgumentException("Bad section for variable "+var.getShortName()+": "+e.getMessage());
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static
+	
+	 		<T extends Algebra<T,U> & nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+	 			U>
+	
+		void merge(DataBundle bundle, Tuple2<T, DimensionedDataSource<U>> dataSource, String dataType)
+	{
+		Object type = dataSource.a().construct();
+		
+		if (type instanceof UnsignedInt1Member) {
+			bundle.mergeUInt1((DimensionedDataSource<UnsignedInt1Member>) dataSource.b());
+		}
+		else if (type instanceof UnsignedInt8Member) {
+			bundle.mergeUInt8((DimensionedDataSource<UnsignedInt8Member>) dataSource.b());
+		}
+		else if (type instanceof SignedInt8Member) {
+			bundle.mergeInt8((DimensionedDataSource<SignedInt8Member>) dataSource.b());
+		}
+		else if (type instanceof UnsignedInt16Member) {
+			bundle.mergeUInt16((DimensionedDataSource<UnsignedInt16Member>) dataSource.b());
+		}
+		else if (type instanceof SignedInt16Member) {
+			bundle.mergeInt16((DimensionedDataSource<SignedInt16Member>) dataSource.b());
+		}
+		else if (type instanceof UnsignedInt32Member) {
+			bundle.mergeUInt32((DimensionedDataSource<UnsignedInt32Member>) dataSource.b());
+		}
+		else if (type instanceof SignedInt32Member) {
+			bundle.mergeInt32((DimensionedDataSource<SignedInt32Member>) dataSource.b());
+		}
+		else if (type instanceof UnsignedInt64Member) {
+			bundle.mergeUInt64((DimensionedDataSource<UnsignedInt64Member>) dataSource.b());
+		}
+		else if (type instanceof SignedInt64Member) {
+			bundle.mergeInt64((DimensionedDataSource<SignedInt64Member>) dataSource.b());
+		}
+		else if (type instanceof Float32Member) {
+			bundle.mergeFlt32((DimensionedDataSource<Float32Member>) dataSource.b());
+		}
+		else if (type instanceof Float64Member) {
+			bundle.mergeFlt64((DimensionedDataSource<Float64Member>) dataSource.b());
+		}
+		else if (type instanceof FixedStringMember) {
+			bundle.mergeFixedString((DimensionedDataSource<FixedStringMember>) dataSource.b());
+		}
+		else if (type instanceof CharMember) {
+			bundle.mergeChar((DimensionedDataSource<CharMember>) dataSource.b());
+		}
+		else {
+			System.out.println("Ignoring unknown data type : " + dataType);
+		}
+	}
+	
+	// lease a handle to the file from the options' pool or open a private one
+	
+	private static NetcdfFilePool.Lease lease(URI fileURI, ReadOptions options) throws IOException {
+		
+		PhaseClock clock = PhaseClock.start(options);
+		
+		NetcdfFilePool pool = options.getFilePool();
+		
+		NetcdfFilePool.Lease lease = (pool == null) ? NetcdfFilePool.unpooled(fileURI) : pool.acquire(fileURI);
+		
+		clock.stop(fileURI.toString(), null, ImportListener.Phase.OPEN, 0);
+		
+		return lease;
+	}
+	
+	// BDZ 8-15-21
+	// Note re: using deprecated NetCDF code: I looked in the latest code on their github site and
+	//   the getShortName() is not deprecated and is a key part of Variable/Dimension designs.
+	
+	// section can be null in which case the whole variable is read. package
+	//   access so the tests can read variables of in memory files.
+	
+	@SuppressWarnings("unchecked")
+	static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>> readVar(Variable var, URI fileURI, ClassicFormat classic, Section section, ReadOptions options)
+		
+			throws IOException
+	{
+		if (isTextual(var, options))
+			return readStrings(var, fileURI, section, options);
+		
+		int[] shape = (section == null) ? var.getShape() : section.getShape();
+		
+		long[] dims = zorbageDims(shape);
+		
+		String[] axisLabels = zorbageAxisLabels(var);
+		
+		Decoder decoder = decoder(var, options);
+		
+		if (decoder == null)
+			return null;
+		
+		IndexedDataSource<Object> storage = null;
+		
+		if (options.isNativeOrderViews() && !decoder.unpacked)
+			storage = nativeOrderView(var, fileURI, classic, section, shape, decoder, options);
+		
+		if (storage == null) {
+			
+			DimensionedDataSource<Object> dataSource = allocate(decoder.type, dims, options);
+	
+			importValues(var, fileURI, classic, section, decoder.copier, decoder.type, dataSource, options);
+			
+			storage = dataSource.rawData();
+		}
+
+		DimensionedDataSource<U> finalDS = wrap(var, fileURI, dims, axisLabels, (IndexedDataSource<U>) storage);
+		
+		if (!decoder.unpacked) {
+			
+			PhaseClock clock = PhaseClock.start(options);
+			
+			rescale(var, (T) decoder.algebra, (IndexedDataSource<U>) finalDS.rawData());
+			
+			clock.stop(fileURI.toString(), var.getFullName(), ImportListener.Phase.RESCALE, 0);
+		}
+
+		return new Tuple2<T,DimensionedDataSource<U>>((T) decoder.algebra, finalDS);
+	}
+	
+	// read a variable into one java array and view it in place. classic
+	//   format variables that need no rescaling are viewed right in the
+	//   mapped file instead. returns null without reading anything when the
+	//   variable should be copied instead.
+	
+	private static
+	
+		IndexedDataSource<Object> nativeOrderView(Variable var, URI fileURI, ClassicFormat classic, Section section, int[] shape,
+													Decoder decoder, ReadOptions options)
+		
+			throws IOException
+	{
+		ReadTask<?> task = ReadTask.current();
+		
+		ReadTask.checkCancelled(task, var.getShortName());
+		
+		if (classic != null && cfUnpackedType(var) == null) {
+			
+			Buffer mapped = classic.values(var, section);
+			
+			IndexedDataSource<Object> view = (mapped == null) ? null : NativeOrderStorage.of(decoder.type, mapped, shape);
+			
+			if (view != null)
+				return view;
+		}
+		
+		long count = 1;
+		for (int i = 0; i < shape.length; i++) {
+			count *= shape[i];
+		}
+		
+		// too big for one java array or headed off heap
+		
+		if (count > Integer.MAX_VALUE - 8 ||
+				count * var.getElementSize() >= options.getOffHeapThreshold())
+			return null;
+		
+		String source = fileURI.toString();
+		
+		String varName = var.getFullName();
+		
+		PhaseClock clock = PhaseClock.start(options);
+		
+		Object data = readValues(var, fileURI, classic, section, options);
+		
+		// a cached chunk is read only so it is not viewed if it will be rescaled
+		
+		if (data instanceof Buffer && cfUnpackedType(var) != null)
+			data = toArray((Buffer) data);
+		
+		long size = length(data);
+		
+		clock.stop(source, varName, ImportListener.Phase.READ, size * var.getElementSize());
+		
+		ReadTask.checkCancelled(task, var.getShortName());
+		
+		IndexedDataSource<Object> view = (data instanceof Buffer) ?
+											NativeOrderStorage.of(decoder.type, (Buffer) data, shape) :
+											NativeOrderStorage.of(decoder.type, data, shape);
+		
+		if (view != null) {
+			
+			if (size != count)
+				throw new IOException("Variable "+var.getShortName()+" returned "+size+
+										" values when "+count+" were expected");
+			
+			return view;
+		}
+		
+		// the array's type has no view. copy what was read rather than read it again.
+		
+		if (data instanceof Buffer)
+			data = toArray((Buffer) data);
+		
+		clock = PhaseClock.start(options);
+		
+		IndexedDataSource<Object> storage = allocate(decoder.type, zorbageDims(shape), options).rawData();
+		
+		copyChunk(var, data, size, new int[shape.length], shape, new LayoutTransform(shape),
+					decoder.copier, decoder.type.allocate(), storage);
+		
+		clock.stop(source, varName, ImportListener.Phase.CONVERT, size * var.getElementSize());
+		
+		return storage;
+	}
+	
+	// strings and (when collapsing) multi-dim char arrays are imported as
+	//   fixed strings. see stringWidth() for how long they are.
+	
+	private static boolean isTextual(Variable var, ReadOptions options) {
+		
+		String dataType = var.getDataType().toString();
+		
+		if (dataType.equalsIgnoreCase("String"))
+			return true;
+		
+		return dataType.equals("char") && var.getRank() > 0 && options.isCollapseCharArrays();
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>> readStrings(Variable var, URI fileURI, Section section, ReadOptions options)
+		
+			throws IOException
+	{
+		String source = fileURI.toString();
+		
+		String varName = var.getFullName();
+		
+		int[] shape = (section == null) ? var.getShape() : section.getShape();
+		
+		boolean chars = var.getDataType().toString().equals("char");
+		
+		// strings are read whole so a cancel is only noticed either side of the read
+		
+		ReadTask<?> task = ReadTask.current();
+		
+		ReadTask.checkCancelled(task, var.getShortName());
+		
+		PhaseClock clock = PhaseClock.start(options);
+		
+		Array array;
+		
+		try {
+			
+			array = (section == null) ? var.read() : var.read(section);
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IllegalArgumentException("Bad section for variable "+var.getShortName()+": "+e.getMessage());
+		}
+		
+		clock.stop(source, varName, ImportListener.Phase.READ, array.getSizeBytes());
+		
+		ReadTask.checkCancelled(task, var.getShortName());
+		
+		clock = PhaseClock.start(options);
+		
+		// char arrays hold one string per run along their last dim
+		
+		int[] stringShape = chars ? Arrays.copyOf(shape, shape.length - 1) : shape;
+		
+		long count = 1;
+		for (int i = 0; i < stringShape.length; i++) {
+			count *= stringShape[i];
+		}
+		
+		if (count > Integer.MAX_VALUE)
+			throw new IOException("Variable "+var.getShortName()+" has too many strings to import");
+		
+		String[] strings = new String[(int) count];
+		
+		if (chars) {
+			
+			// the string iterator yields nothing when the char dim is empty
+			
+			Arrays.fill(strings, "");
+			
+			ArrayChar.StringIterator iter = ((ArrayChar) array).getStringIterator();
+			
+			for (int i = 0; i < strings.length && iter.hasNext(); i++) {
+				strings[i] = iter.next();
+			}
+		}
+		else {
+			
+			for (int i = 0; i < strings.length; i++) {
+				Object value = array.getObject(i);
+				strings[i] = (value == null) ? "" : value.toString();
+			}
+		}
+		
+		// the values are in hand so String variables are sized to the ones read
+		
+		int width = chars ? stringWidth(var, options) : longest(strings);
+		
+		long[] dims = zorbageDims(stringShape);
+		
+		String[] axisLabels = zorbageAxisLabels(var);
+		
+		// the char dim was zorbage dim 0
+		
+		if (chars)
+			axisLabels = (axisLabels.length == 1) ? new String[] {"value"} :
+							Arrays.copyOfRange(axisLabels, 1, axisLabels.length);
+		
+		Algebra<?,Allocatable> algebra = zorbageAlgebra("String");
+		
+		Allocatable type = new FixedStringMember(width);
+		
+		IndexedDataSource<Object> storage = DimensionedStorage.allocate(type, dims).rawData();
+		
+		copyChunk(var, strings, strings.length, new int[stringShape.length], stringShape, new LayoutTransform(stringShape),
+					(RowCopier<Object>) rowCopier("String"), type, storage);
+		
+		clock.stop(source, varName, ImportListener.Phase.CONVERT, array.getSizeBytes());
+		
+		DimensionedDataSource<U> finalDS = wrap(var, fileURI, dims, axisLabels, (IndexedDataSource<U>) storage);
+		
+		return new Tuple2<T,DimensionedDataSource<U>>((T) algebra, finalDS);
+	}
+	
+	// big variables go off heap when the options ask for it and the type allows it
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	static DimensionedDataSource<Object> allocate(Allocatable type, long[] dims, ReadOptions options)
+		throws IOException
+	{
+		long count = 1;
+		for (int i = 0; i < dims.length; i++) {
+			count *= dims[i];
+		}
+		
+		int bytes = OffHeapStorage.bytesPerValue(type);
+		
+		if (bytes > 0 && count * bytes >= options.getOffHeapThreshold()) {
+			
+			IndexedDataSource<Object> storage = OffHeapStorage.allocate(type, count, options.getScratchDirectory());
+			
+			return new NdData<Object>(dims, storage);
+		}
+		
+		// the row copiers move whole rows into a primitive array
+		
+		IndexedDataSource<Object> storage = PrimitiveArrayStorage.allocate(type, count);
+		
+		if (storage != null)
+			return new NdData<Object>(dims, storage);
+		
+		return DimensionedStorage.allocate(type, dims);
+	}
+	
+	// decide how a variable is decoded. returns null if its type is not supported.
+	
+	@SuppressWarnings({"unchecked", "rawtypes", "deprecation"})
+	static Decoder decoder(Variable var, ReadOptions options) throws IOException {
+		
+		String dataType = var.getDataType().toString();
+		
+		Algebra<?,Allocatable> algebra = zorbageAlgebra(dataType);
+		
+		if (algebra == null) {
+			
+			System.out.println("Cannot determine how to import "+dataType+". Ignoring data source "+var.getShortName()+".");
+			
+			return null;
+		}		
+		
+		RowCopier<Object> copier = (RowCopier<Object>) rowCopier(dataType);
+		
+		boolean unpacked = false;
+		
+		if (options.isUnpackScaleOffset()) {
+			
+			String unpackedType = cfUnpackedType(var);
+			
+			RowCopier<Object> unpacker = (unpackedType == null) ? null :
+					UnpackingRowCopier.of(dataType, isUnsigned(var), unpackedType.equals("float"),
+											attributeValue(var, "scale_factor", 1),
+											attributeValue(var, "add_offset", 0),
+											MissingValues.of(var, isUnsigned(var)));
+			
+			if (unpacker != null) {
+				
+				algebra = zorbageAlgebra(unpackedType);
+				
+				copier = unpacker;
+				
+				unpacked = true;
+			}
+		}
+		
+		return new Decoder(algebra, zorbageType(algebra, var, options), copier, unpacked);
+	}
+
+	/**
+	 * Write a data source to a new NetCDF-4 file as one variable. See
+	 * write(URI, String, Tuple2, WriteOptions).
+	 * 
+	 * @param fileURI The file to create. An existing file is replaced.
+	 * @param variableName The name of the variable to write.
+	 * @param dataSource The algebra and data, as returned by readVariable().
+	 * @throws IOException
+	 */
+	public static
+	
+			<T extends Algebra<T,U>, U>
+	
+		void write(URI fileURI, String variableName, Tuple2<T, DimensionedDataSource<U>> dataSource)
+		
+			throws IOException
+	{
+		write(fileURI, variableName, dataSource, new WriteOptions());
+	}
+
+	/**
+	 * Write a data source to a new NetCDF file as one variable. The axes are
+	 * put back in NetCDF order and the Y axis is flipped back so reading the
+	 * file returns the same data source. Axis labels become dimension names
+	 * and the value unit becomes the units attribute.
+	 * 
+	 * String data cannot be written this way: see
+	 * write(URI, String, Tuple2, Object, WriteOptions).
+	 * 
+	 * @param fileURI The file to create. An existing file is replaced.
+	 * @param variableName The name of the variable to write.
+	 * @param dataSource The algebra and data, as returned by readVariable().
+	 * @param options The format, chunking and compression to use.
+	 * @throws IOException if the file cannot be written. This includes NetCDF-4
+	 *   output when the native netCDF-C library is not available.
+	 */
+	public static
+	
+			<T extends Algebra<T,U>, U>
+	
+		void write(URI fileURI, String variableName, Tuple2<T, DimensionedDataSource<U>> dataSource, WriteOptions options)
+		
+			throws IOException
+	{
+		U value = dataSource.a().construct();
+		
+		// the algebra makes strings that can hold nothing
+		
+		if (value instanceof FixedStringMember)
+			throw new IllegalArgumentException("Writing strings needs a value with the capacity of the data's strings."+
+												" Use write(URI, String, Tuple2, Object, WriteOptions).");
+		
+		Exporter.write(fileURI, variableName, value, dataSource.b(), options);
+	}
+
+	/**
+	 * Write a data source to a new NetCDF file as one variable as described
+	 * in write(URI, String, Tuple2, WriteOptions) using a value shaped like
+	 * the data's values. This is needed for string data: the value must be
+	 * a FixedStringMember with the capacity the data was allocated with.
+	 * 
+	 * @param fileURI The file to create. An existing file is replaced.
+	 * @param variableName The name of the variable to write.
+	 * @param dataSource The algebra and data, as returned by readVariable().
+	 * @param value A value like the data's values. It is overwritten while
+	 *   the data is written.
+	 * @param options The format, chunking and compression to use.
+	 * @throws IOException if the file cannot be written.
+	 */
+	public static
+	
+			<T extends Algebra<T,U>, U>
+	
+		void write(URI fileURI, String variableName, Tuple2<T, DimensionedDataSource<U>> dataSource, U value,
+					WriteOptions options)
+		
+			throws IOException
+	{
+		Exporter.write(fileURI, variableName, value, dataSource.b(), options);
+	}
+
+	/**
+	 * Describe every variable in a NetCDF file without reading any of their
+	 * values. Only the file's header is read.
+	 * 
+	 * @param fileURI The file to describe.
+	 * @return One description per variable in file order.
+	 * @throws IOException
+	 */
+	public static
+	
+		List<VariableDescription> describe(URI fileURI)
+	
+			throws IOException
+	{
+		return describe(fileURI, new ReadOptions());
+	}
+
+	/**
+	 * Describe every variable in a NetCDF file using the given options. The
+	 * file is leased from the options' file pool if it has one.
+	 * 
+	 * @param fileURI The file to describe.
+	 * @param options The file pool and listener to use.
+	 * @return One description per variable in file order.
+	 * @throws IOException
+	 */
+	public static
+	
+		List<VariableDescription> describe(URI fileURI, ReadOptions options)
+	
+			throws IOException
+	{
+		List<VariableDescription> descriptions = new ArrayList<>();
+		
+		try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+			
+			for (Variable var : lease.file().getVariables()) {
+				
+				descriptions.add(describe(var));
+			}
+		}
+		
+		return descriptions;
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private static VariableDescription describe(Variable var) {
+		
+		long[] dims = zorbageDims(var.getShape());
+		
+		String[] labels = normalizeLabels(dims, zorbageAxisLabels(var));
+		
+		String dataType = var.getDataType().toString();
+		
+		Algebra<?,Allocatable> algebra = zorbageAlgebra(dataType);
+		
+		Map<String,String> attributes = new LinkedHashMap<>();
+		for (Attribute att : var.attributes()) {
+			attributes.put(att.getShortName(), att.isString() ? att.getStringValue() : att.getValues().toString().trim());
+		}
+		
+		Double scale = var.attributes().findAttribute("scale_factor") == null ? null :
+							attributeValue(var, "scale_factor", 1);
+		
+		Double offset = var.attributes().findAttribute("add_offset") == null ? null :
+							attributeValue(var, "add_offset", 0);
+		
+		return new VariableDescription(var.getFullName(), dataType, var.getShape(),
+										normalizeDims(dims), labels, algebra,
+										var.getUnitsString(), scale, offset, attributes);
+	}
+
+	/**
+	 * Open one variable of a NetCDF file without reading any of its values.
+	 * Values are read on demand, one tile at a time, as the returned data
+	 * source is accessed. Tiles follow the variable's chunk layout when the
+	 * file has one. The most recently used tiles are kept in a bounded cache.
+	 * The data source's rawData() is a {@link TileCachedStorage} that can
+	 * report cache statistics and that must be closed when done with it.
+	 * The data source is read only: setting a value throws an
+	 * UnsupportedOperationException. Copy it to writable storage first to
+	 * modify it.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to open.
+	 * @param maxCachedTiles The maximum number of decoded tiles to keep in memory.
+	 * @return The algebra and the lazily loaded data source. Returns null if
+	 *   the variable's type is not supported.
+	 * @throws IOException
+	 */
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			openVariable(URI fileURI, String variableName, int maxCachedTiles)
+		
+				throws IOException
+	{
+		return NetCDF.<T,U>openVariable(fileURI, variableName, maxCachedTiles, new ReadOptions());
+	}
+
+	/**
+	 * Open one variable of a NetCDF file using the given options. The file
+	 * is leased from the options' file pool if it has one and is returned
+	 * to it when the data source is closed. The options' string width sizes
+	 * the values of String variables.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to open.
+	 * @param maxCachedTiles The maximum number of decoded tiles to keep in memory.
+	 * @param options The file pool, listener and string width to use.
+	 * @return The algebra and the lazily loaded data source. Returns null if
+	 *   the variable's type is not supported.
+	 * @throws IOException
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static
+	
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			openVariable(URI fileURI, String variableName, int maxCachedTiles, ReadOptions options)
+		
+				throws IOException
+	{
+		if (maxCachedTiles < 1)
+			throw new IllegalArgumentException("tile cache must hold at least one tile");
+		
+		NetcdfFilePool.Lease lease = lease(fileURI, options);
+		
+		try {
+			
+			Variable var = lease.file().findVariable(variableName);
+			
+			if (var == null)
+				throw new IllegalArgumentException("Variable "+variableName+" not found in "+fileURI);
+			
+			String dataType = var.getDataType().toString();
+			
+			Algebra<?,Allocatable> algebra = zorbageAlgebra(dataType);
+			
+			if (algebra == null) {
+				
+				System.out.println("Cannot determine how to import "+dataType+". Ignoring data source "+var.getShortName()+".");
+				
+				lease.close();
+				
+				return null;
+			}
+			
+			TileCachedStorage<T,U> storage =
+					new TileCachedStorage(lease, var, (T) algebra, zorbageType(algebra, var, options),
+											rowCopier(dataType), maxCachedTiles);
+			
+			long[] dims = zorbageDims(var.getShape());
+			
+			DimensionedDataSource<U> ds = wrap(var, fileURI, dims, zorbageAxisLabels(var), storage);
+			
+			return new Tuple2<T,DimensionedDataSource<U>>((T) algebra, ds);
+			
+		} catch (IOException | RuntimeException e) {
+			
+			lease.close();
+			
+			throw e;
+		}
+	}
+
+	/**
+	 * Join one variable from several files end to end along its first
+	 * (outermost, usually time) NetCDF axis without reading any values.
+	 * Every file must hold the variable with the same type and the same
+	 * shape apart from the first axis. Values are read lazily from the file
+	 * that holds them as the returned data source is accessed. The data
+	 * source's rawData() is an {@link AggregatedStorage} that must be closed
+	 * when done with it. The data source is read only: setting a value throws
+	 * an UnsupportedOperationException.
+	 * 
+	 * @param files The files in the order their values follow one another.
+	 * @param variableName The full name of the variable to join.
+	 * @param maxOpenFiles The most files to keep open at once.
+	 * @param maxCachedTiles The most decoded tiles to keep per open file.
+	 * @return The algebra and the joined data source. Returns null if the
+	 *   variable's type is not supported.
 	 * @throws IOException
 	 */
 	public static
@@ -106,243 +1780,459 @@ public class NetCDF {
 			<T extends Algebra<T,U> & Addition<U> &
 						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
 				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
 		
-		DataBundle readAllDatasets(URI fileURI)
+			aggregate(List<URI> files, String variableName, int maxOpenFiles, int maxCachedTiles)
+		
+				throws IOException
 	{
-		DataBundle bundle = new DataBundle();
+		return NetCDF.<T,U>aggregate(files, variableName, maxOpenFiles, maxCachedTiles, new ReadOptions());
+	}
+
+	/**
+	 * Join one variable from several files using the given options. Files
+	 * are leased from the options' file pool if it has one. The options'
+	 * string width sizes the values of String variables.
+	 * 
+	 * @param files The files in the order their values follow one another.
+	 * @param variableName The full name of the variable to join.
+	 * @param maxOpenFiles The most files to keep open at once.
+	 * @param maxCachedTiles The most decoded tiles to keep per open file.
+	 * @param options The file pool, listener and string width to use.
+	 * @return The algebra and the joined data source. Returns null if the
+	 *   variable's type is not supported.
+	 * @throws IOException
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public static
 	
-		try {
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		Tuple2<T, DimensionedDataSource<U>>
+		
+			aggregate(List<URI> files, String variableName, int maxOpenFiles, int maxCachedTiles,
+						ReadOptions options)
+		
+				throws IOException
+	{
+		if (files.isEmpty())
+			throw new IllegalArgumentException("no files to aggregate");
+		
+		if (maxOpenFiles < 1)
+			throw new IllegalArgumentException("at least one file must be allowed open");
+		
+		if (maxCachedTiles < 1)
+			throw new IllegalArgumentException("tile cache must hold at least one tile");
+		
+		long[] steps = new long[files.size()];
+		
+		int[] firstShape = null;
+		
+		String firstType = null;
 		
-			NetcdfFile file = NetcdfFiles.open(fileURI.toURL().toString());
+		Variable firstVar = null;
+		
+		// only the headers are read here
+		
+		for (int f = 0; f < files.size(); f++) {
 			
-			List<Variable> vars = file.getVariables();
-
-			for (Variable var : vars) {
+			URI uri = files.get(f);
 			
-				Tuple2<T, DimensionedDataSource<U>> dataSource = readVar(var, fileURI);
+			try (NetcdfFilePool.Lease lease = lease(uri, options)) {
 				
-				if (dataSource == null)
-					continue;
+				Variable var = lease.file().findVariable(variableName);
+				
+				if (var == null)
+					throw new IllegalArgumentException("Variable "+variableName+" not found in "+uri);
+				
+				int[] shape = var.getShape();
+				
+				String dataType = var.getDataType().toString();
+				
+				if (shape.length == 0)
+					throw new IllegalArgumentException("Variable "+variableName+" has no axis to join along");
+				
+				if (firstShape == null) {
+					
+					firstShape = shape;
+					
+					firstType = dataType;
+					
+					firstVar = var;
+				}
+				else if (!dataType.equals(firstType) ||
+							!Arrays.equals(Arrays.copyOfRange(shape, 1, shape.length),
+											Arrays.copyOfRange(firstShape, 1, firstShape.length)))
+				{
+					throw new IllegalArgumentException("Variable "+variableName+" in "+uri+" is "+dataType+
+														Arrays.toString(shape)+" which cannot be joined to "+
+														firstType+Arrays.toString(firstShape));
+				}
+				
+				steps[f] = shape[0];
 				
-				merge(bundle, dataSource, var.getDataType().toString());
 			}
 		}
-		catch (IOException e) {
+		
+		Algebra<?,Allocatable> algebra = zorbageAlgebra(firstType);
+		
+		if (algebra == null) {
 			
-			System.out.println("Exception occurred : " + e);
+			System.out.println("Cannot determine how to import "+firstType+". Ignoring data source "+variableName+".");
+			
+			return null;
 		}
 		
-		return bundle;
+		long totalSteps = 0;
+		for (int f = 0; f < steps.length; f++) {
+			totalSteps += steps[f];
+		}
+		
+		// the outer netcdf axis is the last zorbage axis
+		
+		long[] dims = zorbageDims(firstShape);
+		
+		dims[dims.length-1] = totalSteps;
+		
+		Allocatable type = firstType.equalsIgnoreCase("String") ?
+								new FixedStringMember(options.getStringWidth()) : algebra.construct();
+		
+		AggregatedStorage<T,U> storage =
+				new AggregatedStorage(files, variableName, steps, Arrays.copyOfRange(firstShape, 1, firstShape.length),
+										(T) algebra, type, rowCopier(firstType),
+										maxOpenFiles, maxCachedTiles, options.getFilePool());
+		
+		DimensionedDataSource<U> ds = wrap(firstVar, files.get(0), dims, zorbageAxisLabels(firstVar), storage);
+		
+		return new Tuple2<T,DimensionedDataSource<U>>((T) algebra, ds);
 	}
+
+	/**
+	 * Iterate the records of a variable one at a time. See {@link RecordIterator}.
+	 * The iterator must be closed when done with it.
+	 * 
+	 * @param fileURI The file to read from.
+	 * @param variableName The full name of the variable to iterate.
+	 * @param prefetch True to read the next record on a background thread.
+	 * @return The iterator or null if the variable's type is not supported.
+	 * @throws IOException
+	 */
+	public static
 	
-	@SuppressWarnings("unchecked")
-	private static
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
 	
-	 		<T extends Algebra<T,U> & nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
-	 			U>
+		RecordIterator<T,U> readRecords(URI fileURI, String variableName, boolean prefetch)
+		
+			throws IOException
+	{
+		return NetCDF.<T,U>readRecords(fileURI, variableName, prefetch, new ReadOptions());
+	}
+
+	/**
+	 * Iterate the records of a variable one at a time using the given options.
+	 * See {@link RecordIterator}. The iterator must be closed when done with it.
+	 * 
+	 * @param fileURI
+	 * @param variableName
+	 * @param prefetch
+	 * @param options
+	 * @return
+	 * @throws IOException
+	 */
+	public static
 	
-		void merge(DataBundle bundle, Tuple2<T, DimensionedDataSource<U>> dataSource, String dataType)
+			<T extends Algebra<T,U> & Addition<U> &
+						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
+				U>
+	
+		RecordIterator<T,U> readRecords(URI fileURI, String variableName, boolean prefetch, ReadOptions options)
+		
+			throws IOException
 	{
-		Object type = dataSource.a().construct();
+		NetcdfFilePool.Lease lease = lease(fileURI, options);
 		
-		if (type instanceof UnsignedInt1Member) {
-			bundle.mergeUInt1((DimensionedDataSource<UnsignedInt1Member>) dataSource.b());
-		}
-		else if (type instanceof UnsignedInt8Member) {
-			bundle.mergeUInt8((DimensionedDataSource<UnsignedInt8Member>) dataSource.b());
-		}
-		else if (type instanceof SignedInt8Member) {
-			bundle.mergeInt8((DimensionedDataSource<SignedInt8Member>) dataSource.b());
+		try {
+			
+			Variable var = lease.file().findVariable(variableName);
+			
+			if (var == null)
+				throw new IllegalArgumentException("Variable "+variableName+" not found in "+fileURI);
+			
+			Decoder decoder = decoder(var, options);
+			
+			if (decoder == null) {
+				
+				lease.close();
+				
+				return null;
+			}
+			
+			return new RecordIterator<T,U>(lease, var, fileURI, decoder, prefetch);
+			
+		} catch (IOException | RuntimeException e) {
+			
+			lease.close();
+			
+			throw e;
 		}
-		else if (type instanceof UnsignedInt16Member) {
-			bundle.mergeUInt16((DimensionedDataSource<UnsignedInt16Member>) dataSource.b());
+	}
+
+	// the zorbage dims of a netcdf shape: reversed because coord systems differ
+	
+	static long[] zorbageDims(int[] shape) {
+		
+		// never allocate a rank 0 DS, treats as single number: a rank 1 list of 1 element
+		if (shape.length == 0) {
+			return new long[] {1};
 		}
-		else if (type instanceof SignedInt16Member) {
-			bundle.mergeInt16((DimensionedDataSource<SignedInt16Member>) dataSource.b());
+
+		long[] dims = new long[shape.length];
+		for (int i = 0; i < shape.length; i++) {
+			dims[shape.length-1-i] = shape[i];
 		}
-		else if (type instanceof UnsignedInt32Member) {
-			bundle.mergeUInt32((DimensionedDataSource<UnsignedInt32Member>) dataSource.b());
+		return dims;
+	}
+
+	// BDZ 8-15-21 note re deprecation applies here too
+	
+	@SuppressWarnings("deprecation")
+	static String[] zorbageAxisLabels(Variable var) {
+		
+		int rank = var.getRank();
+		
+		if (rank == 0) {
+			return new String[] {"value"};
 		}
-		else if (type instanceof SignedInt32Member) {
-			bundle.mergeInt32((DimensionedDataSource<SignedInt32Member>) dataSource.b());
+		
+		String[] axisLabels = new String[rank];
+		for (int i = 0; i < rank; i++) {
+			axisLabels[rank-1-i] = var.getDimension(i).getShortName();
 		}
-		else if (type instanceof UnsignedInt64Member) {
-			bundle.mergeUInt64((DimensionedDataSource<UnsignedInt64Member>) dataSource.b());
+		return axisLabels;
+	}
+	
+	// for fixed strings if you do not allocate a max size then
+	//   every string.setV() will do nothing.
+
+	@SuppressWarnings("rawtypes")
+	static Allocatable zorbageType(Algebra<?,Allocatable> algebra, Variable var, ReadOptions options) {
+		
+		Allocatable type = algebra.construct();
+		
+		if (type instanceof FixedStringMember) {
+			
+			type = new FixedStringMember(stringWidth(var, options));
 		}
-		else if (type instanceof SignedInt64Member) {
-			bundle.mergeInt64((DimensionedDataSource<SignedInt64Member>) dataSource.b());
+		
+		return type;
+	}
+	
+	// the capacity of the fixed strings a textual variable is imported as
+	//   before any of its values are read. a char variable's strings run
+	//   along its last dim so they are as wide as that dim. a String variable
+	//   declares no width so the options say how wide. nothing is read.
+	
+	static int stringWidth(Variable var, ReadOptions options) {
+		
+		if (var.getDataType() == DataType.CHAR) {
+			
+			int rank = var.getRank();
+			
+			return (rank == 0) ? 1 : Math.max(1, var.getShape()[rank-1]);
 		}
-		else if (type instanceof Float32Member) {
-			bundle.mergeFlt32((DimensionedDataSource<Float32Member>) dataSource.b());
+		
+		return options.getStringWidth();
+	}
+	
+	private static int longest(String[] strings) {
+		
+		int width = 1;
+		
+		for (int i = 0; i < strings.length; i++) {
+			width = Math.max(width, strings[i].codePointCount(0, strings[i].length()));
 		}
-		else if (type instanceof Float64Member) {
-			bundle.mergeFlt64((DimensionedDataSource<Float64Member>) dataSource.b());
+		
+		return width;
+	}
+	
+	// wrap storage laid out in the (reversed, y flipped) zorbage dims into a
+	//   data source with the size one dims removed and with netcdf metadata
+	
+	@SuppressWarnings("unchecked")
+	static
+	
+		<U> DimensionedDataSource<U> wrap(Variable var, URI fileURI, long[] dims, String[] axisLabels, IndexedDataSource<U> storage)
+	{
+		long[] compressedDims = normalizeDims(dims);
+		
+		DimensionedDataSource<U> finalDS = (DimensionedDataSource<U>) new NdData<>(compressedDims, storage);
+		
+		finalDS.setName(datasetName(var));
+		
+		finalDS.setSource(fileURI.toString());
+
+		finalDS.setValueUnit(var.getUnitsString());
+
+		String[] labels = normalizeLabels(dims, axisLabels);
+		
+		for (int i = 0; i < labels.length; i++) {
+			finalDS.setAxisType(i, labels[i]);
 		}
-		else if (type instanceof FixedStringMember) {
-			bundle.mergeFixedString((DimensionedDataSource<FixedStringMember>) dataSource.b());
+		
+		return finalDS;
+	}
+	
+	// variables outside the root group are prefixed with their group's path
+	//   so same named variables in different groups can be told apart
+	
+	static String datasetName(Variable var) {
+		
+		String name = var.getNameAndDimensions();
+		
+		Group group = var.getParentGroup();
+		
+		if (group == null || group.isRoot())
+			return name;
+		
+		return group.getFullName() + "/" + name;
+	}
+	
+	// the axis labels that survive normalizeDims(dims)
+	
+	private static String[] normalizeLabels(long[] dims, String[] axisLabels) {
+		
+		String[] labels = new String[normalizeDims(dims).length];
+		
+		// these first two dims can have 1's in them
+		
+		if (labels.length > 0) {
+			labels[0] = axisLabels[0];
 		}
-		else if (type instanceof CharMember) {
-			bundle.mergeChar((DimensionedDataSource<CharMember>) dataSource.b());
+			
+		if (labels.length > 1) {
+			labels[1] = axisLabels[1];
 		}
-		else {
-			System.out.println("Ignoring unknown data type : " + dataType);
+		
+		// any other dims == 1 in origDs have to be accounted for;
+
+		int count = 2;
+		for (int i = 2; i < axisLabels.length; i++) {
+			if (dims[i] == 1)
+				continue;
+			labels[count] = axisLabels[i];
+			count++;
 		}
+		
+		return labels;
 	}
 	
-	// BDZ 8-15-21
-	// Note re: using deprecated NetCDF code: I looked in the latest code on their github site and
-	//   the getShortName() is not deprecated and is a key part of Variable/Dimension designs.
+	// Finally capture any special scaling if necessary
+	//   In practice maybe people scale Short backed files into Doubles this way
+	//   thus saving storage space. Nifti and/or Ecat do similar things.
 	
-	@SuppressWarnings({"unchecked", "rawtypes", "deprecation"})
-	private static
+	// NOTE: my current code does not transmute type (for instance from short
+	//   to double).
+	
+	@SuppressWarnings("unchecked")
+	static
 	
 			<T extends Algebra<T,U> & Addition<U> &
 						nom.bdezonia.zorbage.algebra.ScaleByDouble<U>,
 				U>
 	
-		Tuple2<T, DimensionedDataSource<U>> readVar(Variable var, URI fileURI)
+		void rescale(Variable var, T algebra, IndexedDataSource<U> data)
 	{
 		// TODO try as I might I cannot find any info about axis calibrations/scales/offsets.
 		// I did find a web page that says some people encode annotations as "scale_factor"
 		// and "add_offset" but I'm not finding them in at least some of my data. Ask in
 		// community how to find this info.
 
-		double varScale = 1;
-		double varOffset = 0;
-		
-		boolean varHasScale = false;
-		boolean varHasOffset = false;
-		
 		Attribute att;
 		att = var.attributes().findAttribute("scale_factor");
 		if (att != null) {
 			Number value = att.getNumericValue();
 			if (value != null) {
-				varHasScale = true;
-				varScale = value.doubleValue();
+				ScaleByDouble.compute(algebra, value.doubleValue(), data, data);
 			}
 		}
 		att = var.attributes().findAttribute("add_offset");
 		if (att != null) {
 			Number value = att.getNumericValue();
 			if (value != null) {
-				varHasOffset = true;
-				varOffset = value.doubleValue();
+				U offset = algebra.construct(""+value.doubleValue());
+				TransformWithConstant.compute(algebra, algebra.add(), data, offset, data);
 			}
 		}
-		
-		int rank = var.getRank();
-		
-		long[] dims = new long[rank];
-		String[] axisLabels = new String[rank];
-		for (int i = 0; i < dims.length; i++) {
-			dims[i] = var.getDimension(i).getLength();
-			axisLabels[i] = var.getDimension(i).getShortName();
-		}
-		
-		// now fix dims and units in various ways to undo some netcdf weirdness
-		
-		// never allocate a rank 0 DS, treats as single number: a rank 1 list of 1 element
-		if (rank == 0) {
-			dims = new long[] {1};
-			axisLabels = new String[] {"value"};
-		}
-		
-		// reverse dims because coord systems differ
+	}
 
-		long[] tmpDims = dims.clone();
-		String[] tmpLabels = axisLabels.clone();
-		for (int i = 0; i < dims.length; i++) {
-			tmpDims[dims.length-1-i] = dims[i];
-			tmpLabels[dims.length-1-i] = axisLabels[i];
-		}
-		dims = tmpDims;
-		axisLabels = tmpLabels;
-		
-		String dataType = var.getDataType().toString();
+	// CF conventions: packed data is unpacked to the wider of its own type and
+	//   the type of the scale_factor and add_offset attributes, so doubles are
+	//   never narrowed. when those attributes are integers (which CF does not
+	//   allow but is seen in the wild) integer data is unpacked to double so
+	//   no precision is lost. returns null when var is not packed.
+	
+	private static String cfUnpackedType(Variable var) {
 		
-		Algebra<?,Allocatable> algebra = zorbageAlgebra(dataType);
+		Attribute scale = var.attributes().findAttribute("scale_factor");
+		Attribute offset = var.attributes().findAttribute("add_offset");
 		
-		if (algebra == null) {
-			
-			System.out.println("Cannot determine how to import "+dataType+". Ignoring data source "+var.getShortName()+".");
-			
+		if (scale == null && offset == null)
 			return null;
-		}		
 		
-		Allocatable type = algebra.construct();
+		if (var.getDataType() == DataType.DOUBLE)
+			return "double";
 		
-		// for fixed strings if you do not allocate a max size then
-		//   every string.setV() will do nothing.
+		boolean sawDouble = false;
+		boolean sawFloat = false;
 		
-		if (type instanceof FixedStringMember) {
-			
-			type = new FixedStringMember(256);
+		for (Attribute att : new Attribute[] {scale, offset}) {
+			if (att == null)
+				continue;
+			if (att.getDataType() == DataType.DOUBLE)
+				sawDouble = true;
+			else if (att.getDataType() == DataType.FLOAT)
+				sawFloat = true;
 		}
 		
-		Procedure2<Array,Object> converterProc = (Procedure2<Array,Object>) converter(var.getDataType().toString());
+		if (sawDouble)
+			return "double";
 		
-		DimensionedDataSource<Object> dataSource = DimensionedStorage.allocate(type, dims);
-
-		importValues(algebra, type, var, converterProc, dataSource);
-
-		long[] compressedDims = normalizeDims(dims);
+		if (sawFloat)
+			return "float";
 		
-		DimensionedDataSource<U> finalDS = (DimensionedDataSource<U>) new NdData<>(compressedDims, dataSource.rawData());
+		if (var.getDataType() == DataType.FLOAT)
+			return "float";
 		
-		finalDS.setName(var.getNameAndDimensions());
+		return "double";
+	}
+	
+	private static boolean isUnsigned(Variable var) {
 		
-		finalDS.setSource(fileURI.toString());
-
-		finalDS.setValueUnit(var.getUnitsString());
-
-		// these first two dims can have 1's in them
+		if (var.getDataType().isUnsigned())
+			return true;
 		
-		if (finalDS.numDimensions() > 0) {
-			finalDS.setAxisType(0, axisLabels[0]);
-		}
-			
-		if (finalDS.numDimensions() > 1) {
-			finalDS.setAxisType(1, axisLabels[1]);
-		}
+		Attribute att = var.attributes().findAttribute("_Unsigned");
 		
-		// any other dims == 1 in origDs have to be accounted for;
-
-		int count = 2;
-		for (int i = 2; i < axisLabels.length; i++) {
-			if (dataSource.dimension(i) == 1)
-				continue;
-			finalDS.setAxisType(count, axisLabels[i]);
-			count++;
-		}
+		return att != null && "true".equalsIgnoreCase(att.getStringValue());
+	}
+	
+	private static double attributeValue(Variable var, String name, double defaultValue) {
 		
-		// Finally capture any special scaling if necessary
-		//   In practice maybe people scale Short backed files into Doubles this way
-		//   thus saving storage space. Nifti and/or Ecat do similar things.
+		Attribute att = var.attributes().findAttribute(name);
 		
-		// NOTE: my current code does not transmute type (for instance from short
-		//   to double).
+		if (att == null)
+			return defaultValue;
 		
-		if (varHasScale) {
-			
-			ScaleByDouble.compute((T) algebra,
-									varScale,
-									(IndexedDataSource<U>) finalDS.rawData(),
-									(IndexedDataSource<U>) finalDS.rawData());
-		}
+		Number value = att.getNumericValue();
 		
-		if (varHasOffset) {
-
-			TransformWithConstant.compute((T) algebra,
-											((T)algebra).add(),
-											(IndexedDataSource<U>) finalDS.rawData(),
-											(U) algebra.construct(""+varOffset),
-											(IndexedDataSource<U>) finalDS.rawData());
-		}
-
-		return new Tuple2<T,DimensionedDataSource<U>>((T) algebra, finalDS);
+		return (value == null) ? defaultValue : value.doubleValue();
 	}
-
+	
 	// remove dimensions of size one when they are not x nor y
 	
 	private static long[] normalizeDims(long[] dims) {
@@ -425,136 +2315,218 @@ public class NetCDF {
 		return null;
 	}
 
-	private static
+	// one copier per NetCDF type. when the destination is a
+	//   PrimitiveArrayStorage of the same array type a row is one
+	//   System.arraycopy. otherwise each value is set through a scratch member
+	//   in a loop that only ever sees one array type and one member type.
+	//   package access so the benchmarks time these very copiers.
 	
-		Procedure2<Array,?> converter(String netcdfType)
+	static
+	
+		RowCopier<?> rowCopier(String netcdfType)
 	{
 		if (netcdfType.equals("char"))
-			return new Procedure2<Array, CharMember>() {
+			return new RowCopier<CharMember>() {
 			
 				@Override
-				public void call(Array arr, CharMember out) {
-					out.setV(arr.nextChar());
+				public void copy(Object src, int srcPos, CharMember out, IndexedDataSource<CharMember> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					char[] data = (char[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equalsIgnoreCase("String"))
-			return new Procedure2<Array, FixedStringMember>() {
+			return new RowCopier<FixedStringMember>() {
 			
 				@Override
-				public void call(Array arr, FixedStringMember out) {
-					out.setV(arr.toString());
+				public void copy(Object src, int srcPos, FixedStringMember out, IndexedDataSource<FixedStringMember> dst, long dstPos, int count) {
+					Object[] data = (Object[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(String.valueOf(data[srcPos+i]));
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
-			
+		
 		if (netcdfType.equals("boolean"))
-			return new Procedure2<Array, UnsignedInt1Member>() {
+			return new RowCopier<UnsignedInt1Member>() {
 			
 				@Override
-				public void call(Array arr, UnsignedInt1Member out) {
-					out.setV(arr.nextBoolean() ? 1 : 0);
+				public void copy(Object src, int srcPos, UnsignedInt1Member out, IndexedDataSource<UnsignedInt1Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					boolean[] data = (boolean[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i] ? 1 : 0);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("byte") || netcdfType.equals("enum1"))
-			return new Procedure2<Array, SignedInt8Member>() {
+			return new RowCopier<SignedInt8Member>() {
 			
 				@Override
-				public void call(Array arr, SignedInt8Member out) {
-					out.setV(arr.nextByte());
+				public void copy(Object src, int srcPos, SignedInt8Member out, IndexedDataSource<SignedInt8Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					byte[] data = (byte[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("ubyte"))
-			return new Procedure2<Array, UnsignedInt8Member>() {
+			return new RowCopier<UnsignedInt8Member>() {
 			
 				@Override
-				public void call(Array arr, UnsignedInt8Member out) {
-					out.setV(arr.nextByte());
+				public void copy(Object src, int srcPos, UnsignedInt8Member out, IndexedDataSource<UnsignedInt8Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					byte[] data = (byte[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("short") || netcdfType.equals("enum2"))
-			return new Procedure2<Array, SignedInt16Member>() {
+			return new RowCopier<SignedInt16Member>() {
 			
 				@Override
-				public void call(Array arr, SignedInt16Member out) {
-					out.setV(arr.nextShort());
+				public void copy(Object src, int srcPos, SignedInt16Member out, IndexedDataSource<SignedInt16Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					short[] data = (short[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("ushort"))
-			return new Procedure2<Array, UnsignedInt16Member>() {
+			return new RowCopier<UnsignedInt16Member>() {
 			
 				@Override
-				public void call(Array arr, UnsignedInt16Member out) {
-					out.setV(arr.nextShort());
+				public void copy(Object src, int srcPos, UnsignedInt16Member out, IndexedDataSource<UnsignedInt16Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					short[] data = (short[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("int") || netcdfType.equals("enum4"))
-			return new Procedure2<Array, SignedInt32Member>() {
+			return new RowCopier<SignedInt32Member>() {
 			
 				@Override
-				public void call(Array arr, SignedInt32Member out) {
-					out.setV(arr.nextInt());
+				public void copy(Object src, int srcPos, SignedInt32Member out, IndexedDataSource<SignedInt32Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					int[] data = (int[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("uint"))
-			return new Procedure2<Array, UnsignedInt32Member>() {
+			return new RowCopier<UnsignedInt32Member>() {
 			
-			@Override
-			public void call(Array arr, UnsignedInt32Member out) {
-				out.setV(arr.nextInt());
-			}
-		
-		};
+				@Override
+				public void copy(Object src, int srcPos, UnsignedInt32Member out, IndexedDataSource<UnsignedInt32Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					int[] data = (int[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
+				}
+			
+			};
 		
 		if (netcdfType.equals("long"))
-			return new Procedure2<Array, SignedInt64Member>() {
+			return new RowCopier<SignedInt64Member>() {
 			
 				@Override
-				public void call(Array arr, SignedInt64Member out) {
-					out.setV(arr.nextLong());
+				public void copy(Object src, int srcPos, SignedInt64Member out, IndexedDataSource<SignedInt64Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					long[] data = (long[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("ulong"))
-			return new Procedure2<Array, UnsignedInt64Member>() {
+			return new RowCopier<UnsignedInt64Member>() {
 			
 				@Override
-				public void call(Array arr, UnsignedInt64Member out) {
-					out.setV(arr.nextLong());
+				public void copy(Object src, int srcPos, UnsignedInt64Member out, IndexedDataSource<UnsignedInt64Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					long[] data = (long[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("float"))
-			return new Procedure2<Array, Float32Member>() {
+			return new RowCopier<Float32Member>() {
 			
 				@Override
-				public void call(Array arr, Float32Member out) {
-					out.setV(arr.nextFloat());
+				public void copy(Object src, int srcPos, Float32Member out, IndexedDataSource<Float32Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					float[] data = (float[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
 		
 		if (netcdfType.equals("double"))
-			return new Procedure2<Array, Float64Member>() {
+			return new RowCopier<Float64Member>() {
 			
 				@Override
-				public void call(Array arr, Float64Member out) {
-					out.setV(arr.nextDouble());
+				public void copy(Object src, int srcPos, Float64Member out, IndexedDataSource<Float64Member> dst, long dstPos, int count) {
+					if (PrimitiveArrayStorage.copyRow(src, srcPos, dst, dstPos, count))
+						return;
+					double[] data = (double[]) src;
+					for (int i = 0; i < count; i++) {
+						out.setV(data[srcPos+i]);
+						dst.set(dstPos+i, out);
+					}
 				}
 			
 			};
@@ -564,74 +2536,502 @@ public class NetCDF {
 		return null;
 	}
 
-	private static
+	// package access so the benchmarks can time it on its own
 	
-		void importValues(Algebra<?,?> algebra, Object val, Variable var,
-							Procedure2<Array,Object> converter,
-							DimensionedDataSource<Object> dataSource)
-	{
-		// netcdf dims are stored and data is written in reverse order.
-		// but to simplify code ignore that for now.
+	@SuppressWarnings("rawtypes")
+	static
+	
+		void importValues(Variable var, URI fileURI, ClassicFormat classic, Section section, RowCopier<Object> copier,
+							Allocatable type, DimensionedDataSource<Object> dataSource,
+							ReadOptions options)
 		
-		long[] netCDFDims = DataSourceUtils.dimensions(dataSource);
+			throws IOException
+	{
+		// netcdf dims are stored and data is written in reverse order. the
+		// zorbage dims have already been reversed so x (zorbage dim 0) varies
+		// fastest in both spaces. a run of values along the last netcdf dim
+		// therefore lands as one contiguous run in zorbage space. only the
+		// Y flip changes which row it lands in.
 		
-		Array array = null;
+		long[] dims = DataSourceUtils.dimensions(dataSource);
 		
-		// iterate NetCDF space
-
-		SamplingIterator<IntegerIndex> iter = GridIterator.compute(netCDFDims);
-		IntegerIndex netCDFIdx = new IntegerIndex(netCDFDims.length);
-		IntegerIndex zorbageIdx = new IntegerIndex(netCDFDims.length);
-		while (iter.hasNext()) {
-
-			if (array == null || ((!array.hasNext()) && (iter.hasNext()))) {
-				try {
-					array = var.read();
-					// kludge: set the Array's internal iterator so it is not null
-					array.hasNext();
-				} catch (IOException exc) {
-					System.out.println("Could not read an Array from a Variable.");
-					return;
-				}
-			}
+		long totalElements = 1;
+		for (int i = 0; i < dims.length; i++) {
+			totalElements *= dims[i];
+		}
 
-			// get the next value from the array and convert it into a zorbage type value
+		if (totalElements == 0)
+			return;
+		
+		IndexedDataSource<Object> storage = dataSource.rawData();
+		
+		// an async read can be cancelled between any two chunks
+		
+		ReadTask<?> task = ReadTask.current();
+		
+		String shortName = var.getShortName();
+		
+		if (var.getRank() == 0) {
 			
-			converter.call(array, val);
+			ReadTask.checkCancelled(task, shortName);
 			
-			// update the netcdf coord to point to the location associated with value just read
+			importChunk(var, fileURI, classic, null, new int[0], new int[0], new LayoutTransform(new int[0]), copier, type.allocate(), storage, options);
 			
-			iter.next(netCDFIdx);
+			return;
+		}
+		
+		Section whole = (section == null) ? new Section(var.getShape()) : section;
+		
+		int[] wholeShape = whole.getShape();
+		
+		// the layout mapping is compiled once and shared by every chunk
+		
+		LayoutTransform layout = new LayoutTransform(wholeShape);
+		
+		// the variable is read exactly once in chunks. the chunks in flight at
+		//   any one time never hold more than the read buffer size in total.
+		
+		int groups = decodeGroups(var, totalElements, storage, options);
+		
+		long chunkBytes = Math.max(var.getElementSize(), options.getReadBufferSize() / groups);
+		
+		List<int[][]> chunks = chunkPlan(wholeShape, var.getElementSize(), chunkBytes);
+		
+		// with a chunk cache the pieces follow the variable's own chunks so
+		//   each piece is one entry. classic format variables are mapped
+		//   instead.
+		
+		DiskChunkCache cache = options.getChunkCache();
+		
+		if (cache != null && (classic == null || classic.values(var, whole) == null)) {
 			
-			// now xform coords from netcdf space to zorbage space
-
-			int maxD = netCDFIdx.numDimensions() - 1;
-			for (int netcdfDim = 0; netcdfDim <= maxD; netcdfDim++) {
+			List<int[][]> pieces = cache.plan(fileURI, var, whole);
+			
+			if (pieces != null)
+				chunks = pieces;
+		}
+		
+		groups = Math.min(groups, chunks.size());
+		
+		if (groups <= 1) {
+			
+			Object val = type.allocate();
+			
+			for (int[][] chunk : chunks) {
 				
-				int zorbageDim = netcdfDim;
+				ReadTask.checkCancelled(task, shortName);
+				
+				importChunk(var, fileURI, classic, whole, chunk[0], chunk[1], layout, copier, val, storage, options);
+			}
+			
+			return;
+		}
+		
+		// split the chunks into contiguous groups that are decoded in parallel.
+		//   chunks write to disjoint parts of the storage.
+		
+		String varName = var.getFullNameEscaped();
+		
+		// set when any group fails so the others stop before their next chunk
+		
+		AtomicBoolean abort = new AtomicBoolean();
+		
+		List<ForkJoinTask<Object>> tasks = new ArrayList<>();
+		
+		for (int g = 0; g < groups; g++) {
+			
+			List<int[][]> group = chunks.subList(chunks.size() * g / groups, chunks.size() * (g + 1) / groups);
+			
+			boolean useCallersVar = (g == 0);
+			
+			tasks.add(options.getDecodePool().submit(() -> {
 				
-				long netcdfPos = netCDFIdx.get(netcdfDim);
+				// NetcdfFile is not thread safe: every group but the first reads
+				//   through its own handle. the caller waits on all of them.
 				
-				long zorbagePos;
+				Object val = type.allocate();
 				
-				// of course NetCDF has a different Y dim convention
-
-				if (zorbageDim == 1) {
-
-					// flip Y
-					long flippedY = netCDFDims[netcdfDim] - 1 - netcdfPos;
+				try {
 					
-					zorbagePos = flippedY;
-				}
-				else {
+					if (useCallersVar) {
+						
+						for (int[][] chunk : group) {
+							
+							if (abort.get())
+								break;
+							
+							ReadTask.checkCancelled(task, shortName);
+							
+							importChunk(var, fileURI, classic, whole, chunk[0], chunk[1], layout, copier, val, storage, options);
+						}
+					}
+					else {
+						
+						try (NetcdfFilePool.Lease lease = lease(fileURI, options)) {
+							
+							Variable v = lease.file().findVariable(varName);
+							
+							if (v == null)
+								throw new IOException("Variable "+varName+" is no longer in "+fileURI);
+							
+							for (int[][] chunk : group) {
+								
+								if (abort.get())
+									break;
+								
+								ReadTask.checkCancelled(task, shortName);
+								
+								importChunk(v, fileURI, lease.classic(), whole, chunk[0], chunk[1], layout, copier, val, storage, options);
+							}
+						}
+					}
+					
+				} catch (Throwable t) {
 					
-					zorbagePos = netcdfPos;
+					abort.set(true);
+					
+					throw t;
+				}
+				
+				return null;
+			}));
+		}
+		
+		// every group is waited on, even after a failure, so no group is
+		//   still writing or holding a file handle when this returns
+		
+		IOException failure = null;
+		
+		boolean interrupted = false;
+		
+		for (ForkJoinTask<Object> future : tasks) {
+			
+			try {
+				
+				future.get();
+				
+			} catch (InterruptedException e) {
+				
+				abort.set(true);
+				
+				interrupted = true;
+				
+				future.quietlyJoin();
+				
+				if (failure == null)
+					failure = new IOException("Interrupted while reading "+var.getShortName(), e);
+				
+			} catch (ExecutionException e) {
+				
+				abort.set(true);
+				
+				if (failure == null) {
+					failure = (e.getCause() instanceof IOException) ?
+								(IOException) e.getCause() :
+								new IOException("Could not read "+var.getShortName(), e.getCause());
+				}
+			}
+		}
+		
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		if (failure != null)
+			throw failure;
+	}
+	
+	// decide how many threads decode a variable
+	
+	private static int decodeGroups(Variable var, long totalElements,
+									IndexedDataSource<Object> storage, ReadOptions options)
+	{
+		if (options.getDecodePool() == null)
+			return 1;
+		
+		// bit packed storage can't be written safely from several threads
+		
+		if (storage.accessWithOneThread())
+			return 1;
+		
+		if (totalElements * var.getElementSize() < options.getParallelDecodeThreshold())
+			return 1;
+		
+		return Math.max(1, options.getDecodePool().getParallelism());
+	}
+	
+	// split a shape into row major contiguous chunks of at most maxBytes. each
+	//   chunk is {origin, shape}. whole trailing dims are kept together and the
+	//   outermost dim that does not fit is split into blocks. a single value
+	//   larger than maxBytes still makes a chunk of one value.
+	
+	static List<int[][]> chunkPlan(int[] shape, int elementSize, long maxBytes) {
+		
+		int rank = shape.length;
+		
+		long maxElements = Math.max(1, maxBytes / Math.max(1, elementSize));
+		
+		// k is the first dim of the trailing block of dims that fits
+		
+		int k = rank;
+		long trailing = 1;
+		while (k > 0 && trailing * shape[k-1] <= maxElements) {
+			trailing *= shape[k-1];
+			k--;
+		}
+		
+		List<int[][]> chunks = new ArrayList<>();
+		
+		if (k == 0) {
+			chunks.add(new int[][] {new int[rank], shape.clone()});
+			return chunks;
+		}
+		
+		int split = k - 1;
+		
+		int block = (int) Math.max(1, Math.min(shape[split], maxElements / trailing));
+		
+		int[] pos = new int[split];
+		
+		while (true) {
+		
+			for (int start = 0; start < shape[split]; start += block) {
+				
+				int[] origin = new int[rank];
+				int[] size = shape.clone();
+				for (int j = 0; j < split; j++) {
+					origin[j] = pos[j];
+					size[j] = 1;
 				}
+				origin[split] = start;
+				size[split] = Math.min(block, shape[split] - start);
+				
+				chunks.add(new int[][] {origin, size});
+			}
+			
+			// advance over the dims before the split dim
+			
+			int j = split - 1;
+			while (j >= 0 && ++pos[j] == shape[j]) {
+				pos[j] = 0;
+				j--;
+			}
+			if (j < 0)
+				break;
+		}
+		
+		return chunks;
+	}
 
-				zorbageIdx.set(zorbageDim, zorbagePos);
+	// read one chunk of a variable and copy it into zorbage storage. origin
+	//   and shape locate the chunk within the whole section being read. whole
+	//   is null for rank 0 variables.
+	
+	private static
+	
+		void importChunk(Variable var, URI fileURI, ClassicFormat classic, Section whole, int[] origin, int[] shape, LayoutTransform layout,
+						RowCopier<Object> copier, Object val,
+						IndexedDataSource<Object> storage, ReadOptions options)
+		
+			throws IOException
+	{
+		String source = fileURI.toString();
+		
+		String varName = var.getFullName();
+		
+		Section section = (whole == null) ? null : subsection(whole, origin, shape);
+		
+		PhaseClock clock = PhaseClock.start(options);
+		
+		// classic format rows are copied straight from the mapped file when
+		//   the storage can take them in bulk. unpacking needs each value.
+		
+		Object data = (classic == null || copier instanceof UnpackingRowCopier) ? null : classic.values(var, section);
+		
+		if (data == null)
+			data = readValues(var, fileURI, classic, section, options);
+		
+		// mapped values (from a classic file or the chunk cache) that cannot
+		//   go into the storage in bulk are copied out first
+		
+		if (data instanceof Buffer &&
+				(copier instanceof UnpackingRowCopier || !PrimitiveArrayStorage.accepts(storage, data)))
+			data = toArray((Buffer) data);
+		
+		long size = length(data);
+		
+		long bytes = size * var.getElementSize();
+		
+		clock.stop(source, varName, ImportListener.Phase.READ, bytes);
+		
+		clock = PhaseClock.start(options);
+		
+		copyChunk(var, data, size, origin, shape, layout, copier, val, storage);
+		
+		clock.stop(source, varName, ImportListener.Phase.CONVERT, bytes);
+	}
+	
+	// the values of a section of var (all of it when section is null) in row
+	//   major order as a 1-d java array or, when it is exactly one entry of
+	//   the chunk cache, a typed buffer. classic format files skip the NetCDF
+	//   library entirely. anything else is read through the chunk cache when
+	//   there is one.
+	
+	private static
+	
+		Object readValues(Variable var, URI fileURI, ClassicFormat classic, Section section, ReadOptions options)
+		
+			throws IOException
+	{
+		Object data = (classic == null) ? null : classic.read(var, section);
+		
+		if (data != null)
+			return data;
+		
+		DiskChunkCache cache = options.getChunkCache();
+		
+		if (cache != null) {
+			
+			data = cache.read(fileURI, var, section);
+			
+			if (data != null)
+				return data;
+		}
+		
+		Array array;
+		
+		try {
+			
+			array = (section == null) ? var.read() : var.read(section);
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IllegalArgumentException("Bad section for variable "+var.getShortName()+": "+e.getMessage());
+		}
+		
+		// no copy is made when the Array's backing store is already 1-d
+		
+		return array.get1DJavaArray(array.getDataType());
+	}
+	
+	// the number of values in data: a java array or a typed buffer
+	
+	private static long length(Object data) {
+		
+		if (data instanceof Buffer)
+			return ((Buffer) data).limit();
+		
+		return java.lang.reflect.Array.getLength(data);
+	}
+	
+	// the values of a typed buffer copied into a java array
+	
+	private static Object toArray(Buffer buffer) {
+		
+		Object array = java.lang.reflect.Array.newInstance(ArrayAccess.component(buffer), buffer.limit());
+		
+		ArrayAccess.copy(buffer, 0, array, 0, buffer.limit());
+		
+		return array;
+	}
+	
+	// the part of a section at origin with shape, both relative to the section
+	
+	private static Section subsection(Section whole, int[] origin, int[] shape) {
+		
+		try {
+			
+			List<Range> ranges = new ArrayList<>();
+			
+			for (int i = 0; i < origin.length; i++) {
+				
+				Range r = whole.getRange(i);
+				
+				ranges.add(new Range(r.element(origin[i]), r.element(origin[i] + shape[i] - 1), r.stride()));
 			}
+			
+			return new Section(ranges);
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IllegalArgumentException("Bad chunk of section "+whole+": "+e.getMessage());
+		}
+	}
+	
+	// copy the values of an Array read from var into zorbage storage. see
+	//   copyChunk(Variable, Object, ...).
+	
+	static
+	
+		void copyChunk(Variable var, Array array, int[] origin, int[] shape, LayoutTransform layout,
+						RowCopier<Object> copier, Object val,
+						IndexedDataSource<Object> storage)
+		
+			throws IOException
+	{
+		copyChunk(var, array.get1DJavaArray(array.getDataType()), array.getSize(),
+					origin, shape, layout, copier, val, storage);
+	}
+	
+	// data is a 1-d java array holding the size values of a chunk in row major
+	//   order. origin and shape place the chunk within the netcdf space that
+	//   layout maps onto the zorbage storage being filled. package access so
+	//   the benchmarks can time it on its own.
+	
+	static
+	
+		void copyChunk(Variable var, Object data, long size, int[] origin, int[] shape, LayoutTransform layout,
+						RowCopier<Object> copier, Object val,
+						IndexedDataSource<Object> storage)
+		
+			throws IOException
+	{
+		int rank = shape.length;
+		
+		long expected = 1;
+		for (int i = 0; i < rank; i++) {
+			expected *= shape[i];
+		}
+		
+		// this is a clear error rather than a hidden second read of the data
+		
+		if (size != expected)
+			throw new IOException("Variable "+var.getShortName()+" returned "+size+
+									" values when "+expected+" were expected");
+
+		if (expected == 0)
+			return;
+		
+		if (rank == 0) {
+			
+			copier.copy(data, 0, val, storage, 0, 1);
+			
+			return;
+		}
+		
+		int last = rank - 1;
+		
+		int segment = shape[last];
+		
+		long chunkRows = expected / segment;
+		
+		// rows are whole runs in zorbage storage. stepping to the next row
+		//   just adds the stride of whichever dims advanced.
+		
+		long dst = layout.index(origin);
+		
+		int[] pos = new int[rank];
+		
+		for (long r = 0; r < chunkRows; r++) {
 
-			dataSource.set(zorbageIdx, val);
+			copier.copy(data, (int) (r * segment), val, storage, dst, segment);
+			
+			for (int j = last - 1; j >= 0; j--) {
+				dst += layout.stride(j);
+				if (++pos[j] < shape[j])
+					break;
+				dst -= layout.stride(j) * shape[j];
+				pos[j] = 0;
+			}
 		}
 	}
 }
@@ -0,0 +1,320 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.LinkedList;
+
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+
+/**
+ * A bounded pool of open NetcdfFiles. Opening a file parses its header which
+ * for NetCDF-4 files with many groups can be slow. A pool keeps recently
+ * used handles open so repeated reads of the same few files skip that cost.
+ * <p>
+ * A handle is leased to one user at a time since NetcdfFile is not thread
+ * safe. When several threads read the same file at once each gets its own
+ * handle. Returned handles stay open until the pool holds more than its
+ * maximum number of idle handles; the least recently used ones are closed
+ * first. Handles to local files are reopened when the file's modification
+ * time or length has changed since it was opened.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class NetcdfFilePool implements Closeable {
+
+	private static final NetcdfFilePool SHARED = new NetcdfFilePool(16, true);
+	
+	private final int maxIdle;
+	
+	private final boolean shared;
+	
+	// least recently returned first
+	
+	private final LinkedList<Handle> idle = new LinkedList<>();
+	
+	private boolean closed = false;
+
+	/**
+	 * Make a pool that keeps at most maxIdle unused handles open.
+	 */
+	public NetcdfFilePool(int maxIdle) {
+		this(maxIdle, false);
+	}
+	
+	private NetcdfFilePool(int maxIdle, boolean shared) {
+		if (maxIdle < 0)
+			throw new IllegalArgumentException("max idle handles cannot be negative");
+		this.maxIdle = maxIdle;
+		this.shared = shared;
+	}
+	
+	/**
+	 * A process wide pool keeping up to 16 idle handles. Reads only use it
+	 * when {@link ReadOptions#setFilePool(NetcdfFilePool)} is given it.
+	 * Closing it closes its idle handles but it stays usable.
+	 */
+	public static NetcdfFilePool shared() {
+		return SHARED;
+	}
+	
+	/**
+	 * Lease a handle to the given file. Close the lease to give the handle
+	 * back. The handle itself must not be closed by the caller.
+	 */
+	public Lease acquire(URI fileURI) throws IOException {
+		
+		String key = fileURI.toString();
+		
+		long modified = modified(fileURI);
+		
+		long length = length(fileURI);
+		
+		Handle reused = null;
+		
+		synchronized (this) {
+			
+			if (closed)
+				throw new IllegalStateException("file pool has been closed");
+			
+			Iterator<Handle> iter = idle.descendingIterator();
+			while (iter.hasNext()) {
+				Handle h = iter.next();
+				if (h.key.equals(key)) {
+					iter.remove();
+					reused = h;
+					break;
+				}
+			}
+		}
+		
+		if (reused != null) {
+			
+			if (reused.modified == modified && reused.length == length)
+				return new Lease(this, reused);
+			
+			// the file changed on disk since this handle read its header
+			
+			reused.close();
+		}
+		
+		return new Lease(this, new Handle(key, modified, length, open(fileURI)));
+	}
+	
+	/**
+	 * Lease a handle that belongs to no pool. Closing the lease closes the
+	 * file.
+	 */
+	public static Lease unpooled(URI fileURI) throws IOException {
+		return new Lease(null, new Handle(fileURI.toString(), modified(fileURI), length(fileURI), open(fileURI)));
+	}
+	
+	/**
+	 * The number of idle handles the pool is holding open.
+	 */
+	public synchronized int idleCount() {
+		return idle.size();
+	}
+	
+	/**
+	 * Close every idle handle. Handles leased out when the pool is closed
+	 * are closed as they are returned and later leases fail. The shared
+	 * pool only closes its idle handles.
+	 */
+	@Override
+	public void close() throws IOException {
+		
+		LinkedList<Handle> handles;
+		
+		synchronized (this) {
+			if (!shared)
+				closed = true;
+			handles = new LinkedList<>(idle);
+			idle.clear();
+		}
+		
+		closeAll(handles);
+	}
+	
+	private void release(Handle handle) throws IOException {
+		
+		LinkedList<Handle> evicted = new LinkedList<>();
+		
+		synchronized (this) {
+			
+			if (closed) {
+				evicted.add(handle);
+			}
+			else {
+				idle.addLast(handle);
+				while (idle.size() > maxIdle) {
+					evicted.add(idle.removeFirst());
+				}
+			}
+		}
+		
+		closeAll(evicted);
+	}
+	
+	private static void closeAll(Iterable<Handle> handles) throws IOException {
+		
+		IOException failure = null;
+		
+		for (Handle h : handles) {
+			try {
+				h.close();
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+		
+		if (failure != null)
+			throw failure;
+	}
+	
+	private static NetcdfFile open(URI fileURI) throws IOException {
+		return NetcdfFiles.open(fileURI.toURL().toString());
+	}
+	
+	// what a local file looked like when it was opened. remote files are
+	//   assumed not to change.
+	
+	private static long modified(URI fileURI) {
+		
+		if (!"file".equalsIgnoreCase(fileURI.getScheme()))
+			return 0;
+		
+		return new File(fileURI).lastModified();
+	}
+	
+	private static long length(URI fileURI) {
+		
+		if (!"file".equalsIgnoreCase(fileURI.getScheme()))
+			return 0;
+		
+		return new File(fileURI).length();
+	}
+	
+	private static class Handle {
+		
+		final String key;
+		final long modified;
+		final long length;
+		final NetcdfFile file;
+		
+		// opened the first time it is asked for. stays null for files that
+		//   are not in a classic format.
+		
+		ClassicFormat classic;
+		boolean classicChecked;
+		
+		Handle(String key, long modified, long length, NetcdfFile file) {
+			this.key = key;
+			this.modified = modified;
+			this.length = length;
+			this.file = file;
+		}
+		
+		void close() throws IOException {
+			try {
+				if (classic != null)
+					classic.close();
+			} finally {
+				file.close();
+			}
+		}
+	}
+	
+	/**
+	 * Exclusive use of one open NetcdfFile. Closing a lease more than once
+	 * has no further effect.
+	 */
+	public static class Lease implements Closeable {
+		
+		private final NetcdfFilePool pool;
+		private final Handle handle;
+		private boolean returned = false;
+		
+		private Lease(NetcdfFilePool pool, Handle handle) {
+			this.pool = pool;
+			this.handle = handle;
+		}
+		
+		/**
+		 * The leased file.
+		 */
+		public NetcdfFile file() {
+			return handle.file;
+		}
+		
+		// direct access to the leased file's classic format variables or
+		//   null if it is not a local classic format file. it lives as long
+		//   as the handle so pooled handles map each variable only once.
+		
+		ClassicFormat classic() throws IOException {
+			
+			if (!handle.classicChecked) {
+				
+				handle.classic = ClassicFormat.open(URI.create(handle.key));
+				
+				handle.classicChecked = true;
+			}
+			
+			return handle.classic;
+		}
+		
+		@Override
+		public synchronized void close() throws IOException {
+			
+			if (returned)
+				return;
+			
+			returned = true;
+			
+			if (pool == null)
+				handle.close();
+			else
+				pool.release(handle);
+		}
+		
+		// close the handle instead of giving it back: something may still be
+		//   using it so no one else may lease it.
+		
+		synchronized void discard() throws IOException {
+			
+			if (returned)
+				return;
+			
+			returned = true;
+			
+			handle.close();
+		}
+	}
+}
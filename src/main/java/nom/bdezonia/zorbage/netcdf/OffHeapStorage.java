@@ -0,0 +1,307 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int32.SignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int32.UnsignedInt32Member;
+import nom.bdezonia.zorbage.type.integer.int64.SignedInt64Member;
+import nom.bdezonia.zorbage.type.integer.int8.SignedInt8Member;
+import nom.bdezonia.zorbage.type.integer.int8.UnsignedInt8Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * An IndexedDataSource that keeps its values outside the java heap in
+ * native byte order. Values live either in direct ByteBuffers or in a
+ * scratch file mapped into memory. The scratch file is deleted as soon as
+ * it is mapped so nothing is left behind when the data is collected.
+ * <p>
+ * Only fixed width numeric types are supported. See
+ * {@link ReadOptions#setOffHeapThreshold(long)}.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class OffHeapStorage<U>
+
+	implements IndexedDataSource<U>
+{
+	// segments are kept under 1 GB so each one can be addressed by an int
+	
+	private static final long SEGMENT_BYTES = 1L << 30;
+	
+	private final Codec codec;
+	private final ByteBuffer[] segments;
+	private final long perSegment;
+	private final long size;
+	private final File scratchDirectory;
+
+	private OffHeapStorage(Codec codec, ByteBuffer[] segments, long perSegment, long size, File scratchDirectory) {
+		this.codec = codec;
+		this.segments = segments;
+		this.perSegment = perSegment;
+		this.size = size;
+		this.scratchDirectory = scratchDirectory;
+	}
+	
+	/**
+	 * Returns true if values of the given type can be stored off heap.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static boolean supports(Allocatable type) {
+		return codec(type) != null;
+	}
+	
+	// the bytes one value takes off heap or 0 if the type is not supported
+	
+	@SuppressWarnings("rawtypes")
+	static int bytesPerValue(Allocatable type) {
+		Codec codec = codec(type);
+		return (codec == null) ? 0 : codec.bytes;
+	}
+	
+	/**
+	 * Allocate off heap storage for size values of the given type. When
+	 * scratchDirectory is null the values are kept in direct ByteBuffers.
+	 * Otherwise they are kept in a file created in that directory and
+	 * mapped into memory. Returns null if the type is not supported.
+	 */
+	@SuppressWarnings("rawtypes")
+	public static <U> OffHeapStorage<U> allocate(Allocatable type, long size, File scratchDirectory)
+		throws IOException
+	{
+		if (size < 0)
+			throw new IllegalArgumentException("storage size cannot be negative");
+		
+		Codec codec = codec(type);
+		
+		if (codec == null)
+			return null;
+		
+		long perSegment = SEGMENT_BYTES / codec.bytes;
+		
+		return new OffHeapStorage<U>(codec, segments(codec, perSegment, size, scratchDirectory),
+										perSegment, size, scratchDirectory);
+	}
+	
+	// fresh zeroed segments holding size values, direct or mapped from a new
+	//   scratch file in scratchDirectory
+	
+	private static ByteBuffer[] segments(Codec codec, long perSegment, long size, File scratchDirectory)
+		throws IOException
+	{
+		int count = (int) ((size + perSegment - 1) / perSegment);
+		
+		ByteBuffer[] segments = new ByteBuffer[count];
+		
+		if (scratchDirectory == null) {
+			
+			for (int i = 0; i < count; i++) {
+				long n = Math.min(perSegment, size - i * perSegment);
+				segments[i] = ByteBuffer.allocateDirect((int) (n * codec.bytes)).order(ByteOrder.nativeOrder());
+			}
+		}
+		else {
+			
+			Path path = Files.createTempFile(scratchDirectory.toPath(), "zorbage-netcdf", ".tmp");
+			
+			try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			
+				for (int i = 0; i < count; i++) {
+					long n = Math.min(perSegment, size - i * perSegment);
+					segments[i] = ch.map(FileChannel.MapMode.READ_WRITE, i * perSegment * codec.bytes, n * codec.bytes)
+									.order(ByteOrder.nativeOrder());
+				}
+			}
+			finally {
+				
+				// the mappings stay valid once the file is gone on the platforms that
+				//   allow it. elsewhere the file goes when the jvm exits.
+				
+				if (!path.toFile().delete())
+					path.toFile().deleteOnExit();
+			}
+		}
+		
+		return segments;
+	}
+	
+	/**
+	 * Returns an independent copy of this storage kept off heap the same way
+	 * (direct or in a new scratch file).
+	 */
+	@Override
+	public OffHeapStorage<U> duplicate() {
+		
+		ByteBuffer[] copies;
+		
+		try {
+			
+			copies = segments(codec, perSegment, size, scratchDirectory);
+			
+		} catch (IOException e) {
+			
+			throw new IllegalStateException("Could not allocate off heap copy: "+e.getMessage(), e);
+		}
+		
+		// views so neither buffer's position is disturbed
+		
+		for (int i = 0; i < segments.length; i++) {
+			ByteBuffer src = segments[i].duplicate();
+			src.clear();
+			ByteBuffer dst = copies[i].duplicate();
+			dst.clear();
+			dst.put(src);
+		}
+		
+		return new OffHeapStorage<U>(codec, copies, perSegment, size, scratchDirectory);
+	}
+
+	@Override
+	public void set(long index, U value) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		codec.put(segments[(int) (index / perSegment)], (int) (index % perSegment) * codec.bytes, value);
+	}
+
+	@Override
+	public void get(long index, U value) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		codec.get(segments[(int) (index / perSegment)], (int) (index % perSegment) * codec.bytes, value);
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public StorageConstruction storageType() {
+		return StorageConstruction.MEM_VIRTUAL;
+	}
+
+	@Override
+	public boolean accessWithOneThread() {
+		return false;
+	}
+
+	/**
+	 * Returns true if the values are kept in a mapped scratch file rather
+	 * than in direct ByteBuffers.
+	 */
+	public boolean isFileBacked() {
+		return scratchDirectory != null;
+	}
+	
+	// one codec per type, sized to match the NetCDF values it holds. unsigned
+	//   values use the raw bit convention described in ArrayAccess.
+	
+	private static abstract class Codec {
+		
+		final int bytes;
+		
+		Codec(int bytes) {
+			this.bytes = bytes;
+		}
+		
+		abstract void put(ByteBuffer buf, int pos, Object value);
+		
+		abstract void get(ByteBuffer buf, int pos, Object value);
+	}
+	
+	@SuppressWarnings("rawtypes")
+	private static Codec codec(Allocatable type) {
+		
+		if (type instanceof Float32Member)
+			return new Codec(4) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putFloat(pos, ((Float32Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((Float32Member) value).setV(buf.getFloat(pos)); }
+			};
+		
+		if (type instanceof Float64Member)
+			return new Codec(8) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putDouble(pos, ((Float64Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((Float64Member) value).setV(buf.getDouble(pos)); }
+			};
+		
+		if (type instanceof SignedInt8Member)
+			return new Codec(1) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.put(pos, (byte) ((SignedInt8Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((SignedInt8Member) value).setV(buf.get(pos)); }
+			};
+		
+		if (type instanceof UnsignedInt8Member)
+			return new Codec(1) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.put(pos, (byte) ((UnsignedInt8Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((UnsignedInt8Member) value).setV(buf.get(pos)); }
+			};
+		
+		if (type instanceof SignedInt16Member)
+			return new Codec(2) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putShort(pos, (short) ((SignedInt16Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((SignedInt16Member) value).setV(buf.getShort(pos)); }
+			};
+		
+		if (type instanceof UnsignedInt16Member)
+			return new Codec(2) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putShort(pos, (short) ((UnsignedInt16Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((UnsignedInt16Member) value).setV(buf.getShort(pos)); }
+			};
+		
+		if (type instanceof SignedInt32Member)
+			return new Codec(4) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putInt(pos, (int) ((SignedInt32Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((SignedInt32Member) value).setV(buf.getInt(pos)); }
+			};
+		
+		if (type instanceof UnsignedInt32Member)
+			return new Codec(4) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putInt(pos, (int) ((UnsignedInt32Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((UnsignedInt32Member) value).setV(buf.getInt(pos)); }
+			};
+		
+		if (type instanceof SignedInt64Member)
+			return new Codec(8) {
+				void put(ByteBuffer buf, int pos, Object value) { buf.putLong(pos, ((SignedInt64Member) value).v()); }
+				void get(ByteBuffer buf, int pos, Object value) { ((SignedInt64Member) value).setV(buf.getLong(pos)); }
+			};
+		
+		return null;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Times one phase of an import on the current thread and reports it to an
+ * ImportListener. Nothing is measured when the listener is NONE.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class PhaseClock {
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+	
+	private final ImportListener listener;
+	private final long startNanos;
+	private final long startAllocated;
+	
+	private PhaseClock(ImportListener listener) {
+		this.listener = listener;
+		boolean measure = (listener != ImportListener.NONE);
+		this.startNanos = measure ? System.nanoTime() : 0;
+		this.startAllocated = measure ? allocated() : -1;
+	}
+	
+	static PhaseClock start(ReadOptions options) {
+		return new PhaseClock(options.getImportListener());
+	}
+	
+	void stop(String source, String variable, ImportListener.Phase phase, long bytes) {
+		
+		if (listener == ImportListener.NONE)
+			return;
+		
+		long nanos = System.nanoTime() - startNanos;
+		
+		long endAllocated = allocated();
+		
+		long allocatedBytes = (startAllocated < 0 || endAllocated < 0) ? -1 : endAllocated - startAllocated;
+		
+		listener.phaseCompleted(source, variable, phase, nanos, bytes, allocatedBytes);
+	}
+	
+	// the bytes allocated so far by the current thread or -1 if not known
+	
+	private static long allocated() {
+		
+		if (!(THREADS instanceof com.sun.management.ThreadMXBean))
+			return -1;
+		
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+		
+		if (!threads.isThreadAllocatedMemorySupported() || !threads.isThreadAllocatedMemoryEnabled())
+			return -1;
+		
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,151 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.nio.Buffer;
+
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+
+/**
+ * An IndexedDataSource kept in one primitive java array in zorbage order.
+ * Imports allocate it for every type with a primitive form so the row
+ * copiers can move a whole NetCDF row into it with one System.arraycopy
+ * (or one bulk get from a mapped file) rather than setting
+ * one member at a time.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class PrimitiveArrayStorage<U>
+
+	implements IndexedDataSource<U>
+{
+	private final ArrayAccess access;
+	private final Object array;
+	private final int size;
+
+	private PrimitiveArrayStorage(ArrayAccess access, Object array) {
+		this.access = access;
+		this.array = array;
+		this.size = java.lang.reflect.Array.getLength(array);
+	}
+	
+	/**
+	 * Make a zeroed storage of count values of the given type. Returns null
+	 * if the type has no primitive form or count does not fit in one java
+	 * array.
+	 */
+	@SuppressWarnings("rawtypes")
+	static <U> PrimitiveArrayStorage<U> allocate(Allocatable type, long count) {
+		
+		Class<?> component = ArrayAccess.component(type);
+		
+		if (component == null || count < 0 || count > Integer.MAX_VALUE - 8)
+			return null;
+		
+		Object array = java.lang.reflect.Array.newInstance(component, (int) count);
+		
+		return new PrimitiveArrayStorage<U>(ArrayAccess.of(type, array), array);
+	}
+	
+	// whether copyRow() can copy from src (a java array or a typed buffer)
+	//   into dst
+	
+	static boolean accepts(IndexedDataSource<?> dst, Object src) {
+		
+		if (!(dst instanceof PrimitiveArrayStorage))
+			return false;
+		
+		Class<?> component = ((PrimitiveArrayStorage<?>) dst).array.getClass().getComponentType();
+		
+		if (src instanceof Buffer)
+			return ArrayAccess.component((Buffer) src) == component;
+		
+		return src.getClass().getComponentType() == component;
+	}
+	
+	// copy count values from src (a java array or a typed buffer) into dst
+	//   when dst is backed by an array of the same type. returns false,
+	//   having copied nothing, otherwise.
+	
+	static boolean copyRow(Object src, int srcPos, IndexedDataSource<?> dst, long dstPos, int count) {
+		
+		if (!accepts(dst, src))
+			return false;
+		
+		Object array = ((PrimitiveArrayStorage<?>) dst).array;
+		
+		if (!(src instanceof Buffer)) {
+			
+			System.arraycopy(src, srcPos, array, (int) dstPos, count);
+			
+			return true;
+		}
+		
+		ArrayAccess.copy((Buffer) src, srcPos, array, (int) dstPos, count);
+		
+		return true;
+	}
+	
+	@Override
+	public PrimitiveArrayStorage<U> duplicate() {
+		
+		Object copy = java.lang.reflect.Array.newInstance(array.getClass().getComponentType(), size);
+		
+		System.arraycopy(array, 0, copy, 0, size);
+		
+		return new PrimitiveArrayStorage<U>(access, copy);
+	}
+
+	@Override
+	public void set(long index, U value) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		access.set(array, (int) index, value);
+	}
+
+	@Override
+	public void get(long index, U value) {
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		access.get(array, (int) index, value);
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public StorageConstruction storageType() {
+		return StorageConstruction.MEM_ARRAY;
+	}
+
+	@Override
+	public boolean accessWithOneThread() {
+		return false;
+	}
+}
@@ -0,0 +1,352 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import ucar.nc2.Variable;
+
+/**
+ * ReadOptions tune how {@link NetCDF} reads variables. A freshly constructed
+ * ReadOptions gives the same results as the methods that do not take one.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ReadOptions {
+
+	private ExecutorService variableExecutor = null;
+	private ForkJoinPool decodePool = null;
+	private long parallelDecodeThreshold = 64L * 1024 * 1024;
+	private boolean unpackScaleOffset = false;
+	private Predicate<Variable> variableFilter = null;
+	private boolean skipCoordinateVariables = false;
+	private ImportListener importListener = ImportListener.NONE;
+	private long readBufferSize = 64L * 1024 * 1024;
+	private long offHeapThreshold = Long.MAX_VALUE;
+	private File scratchDirectory = null;
+	private boolean collapseCharArrays = false;
+	private NetcdfFilePool filePool = null;
+	private String groupPath = null;
+	private boolean nativeOrderViews = false;
+	private DiskChunkCache chunkCache = null;
+	private int stringWidth = 256;
+
+	/**
+	 * The executor used to read several variables at once. When null (the
+	 * default) variables are read one after another on the calling thread.
+	 */
+	public ExecutorService getVariableExecutor() {
+		return variableExecutor;
+	}
+
+	/**
+	 * Set the executor used to read several variables at once. Pass null to
+	 * read variables one after another. The executor is never shut down by
+	 * the reader.
+	 */
+	public void setVariableExecutor(ExecutorService executor) {
+		this.variableExecutor = executor;
+	}
+
+	/**
+	 * The pool used to decode slabs of one large variable in parallel. When
+	 * null each variable is decoded on a single thread.
+	 */
+	public ForkJoinPool getDecodePool() {
+		return decodePool;
+	}
+
+	/**
+	 * Set the pool used to decode slabs of one large variable in parallel.
+	 * Decoding reads files so give it a pool of its own rather than the
+	 * common pool, where blocking I/O would starve unrelated parallel work.
+	 * Defaults to null: each variable is decoded on a single thread.
+	 */
+	public void setDecodePool(ForkJoinPool pool) {
+		this.decodePool = pool;
+	}
+
+	/**
+	 * Variables smaller than this many bytes are decoded on a single thread.
+	 */
+	public long getParallelDecodeThreshold() {
+		return parallelDecodeThreshold;
+	}
+
+	/**
+	 * Set the size in bytes that a variable must reach before it is split
+	 * into slabs that are decoded in parallel. Defaults to 64 MB.
+	 */
+	public void setParallelDecodeThreshold(long bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("threshold cannot be negative");
+		this.parallelDecodeThreshold = bytes;
+	}
+
+	/**
+	 * True if CF packed variables are unpacked to floating point as they
+	 * are read.
+	 */
+	public boolean isUnpackScaleOffset() {
+		return unpackScaleOffset;
+	}
+
+	/**
+	 * When true, variables with a scale_factor and / or add_offset are
+	 * unpacked while they are decoded and stored as Float32 or Float64 data
+	 * following the CF type rules. Values matching _FillValue or
+	 * missing_value or outside valid_min / valid_max / valid_range become
+	 * NaN. When false (the default) they keep their packed type and are
+	 * scaled in that type after decoding.
+	 */
+	public void setUnpackScaleOffset(boolean unpack) {
+		this.unpackScaleOffset = unpack;
+	}
+
+	/**
+	 * The filter that picks which variables readAllDatasets() reads. Null
+	 * (the default) reads every variable.
+	 */
+	public Predicate<Variable> getVariableFilter() {
+		return variableFilter;
+	}
+
+	/**
+	 * Set the filter that picks which variables readAllDatasets() reads.
+	 * Variables the filter rejects are never read from disk. Pass null to
+	 * read every variable.
+	 */
+	public void setVariableFilter(Predicate<Variable> filter) {
+		this.variableFilter = filter;
+	}
+
+	/**
+	 * True if readAllDatasets() skips coordinate variables.
+	 */
+	public boolean isSkipCoordinateVariables() {
+		return skipCoordinateVariables;
+	}
+
+	/**
+	 * When true readAllDatasets() does not read coordinate variables (the
+	 * one dimensional variables named after their own dimension). Defaults
+	 * to false.
+	 */
+	public void setSkipCoordinateVariables(boolean skip) {
+		this.skipCoordinateVariables = skip;
+	}
+
+	/**
+	 * The listener told about the time and bytes of each import phase.
+	 */
+	public ImportListener getImportListener() {
+		return importListener;
+	}
+
+	/**
+	 * Set the listener told about the time and bytes of each import phase.
+	 * Defaults to ImportListener.NONE. Pass a {@link JfrImportListener} to
+	 * record flight recorder events.
+	 */
+	public void setImportListener(ImportListener listener) {
+		this.importListener = (listener == null) ? ImportListener.NONE : listener;
+	}
+
+	/**
+	 * The most bytes of NetCDF data read into memory at once per variable.
+	 */
+	public long getReadBufferSize() {
+		return readBufferSize;
+	}
+
+	/**
+	 * Set the most bytes of NetCDF data read into memory at once per
+	 * variable. Variables are read exactly once in chunks no bigger than
+	 * this; when decoded in parallel the chunks in flight share this limit.
+	 * Defaults to 64 MB.
+	 */
+	public void setReadBufferSize(long bytes) {
+		if (bytes < 1)
+			throw new IllegalArgumentException("read buffer size must be positive");
+		this.readBufferSize = bytes;
+	}
+
+	/**
+	 * The size in bytes at or above which a variable is imported into
+	 * {@link OffHeapStorage} instead of on heap storage.
+	 */
+	public long getOffHeapThreshold() {
+		return offHeapThreshold;
+	}
+
+	/**
+	 * Set the size in bytes at or above which a variable is imported into
+	 * {@link OffHeapStorage} instead of on heap storage. Types that cannot
+	 * be kept off heap always stay on heap. Defaults to Long.MAX_VALUE which
+	 * keeps everything on heap.
+	 */
+	public void setOffHeapThreshold(long bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("off heap threshold cannot be negative");
+		this.offHeapThreshold = bytes;
+	}
+
+	/**
+	 * The directory holding scratch files for off heap storage. When null
+	 * (the default) off heap values are kept in direct ByteBuffers.
+	 */
+	public File getScratchDirectory() {
+		return scratchDirectory;
+	}
+
+	/**
+	 * Set the directory holding scratch files for off heap storage. Pass
+	 * null to keep off heap values in direct ByteBuffers, which count
+	 * against the jvm's -XX:MaxDirectMemorySize.
+	 */
+	public void setScratchDirectory(File directory) {
+		this.scratchDirectory = directory;
+	}
+
+	/**
+	 * Whether char variables are imported as strings, one per run of
+	 * characters along their last NetCDF dimension.
+	 */
+	public boolean isCollapseCharArrays() {
+		return collapseCharArrays;
+	}
+
+	/**
+	 * Set whether char variables are imported as strings, one per run of
+	 * characters along their last NetCDF dimension. The strings can hold as
+	 * many characters as that dimension is long. Defaults to false, which
+	 * imports char variables as individual characters as earlier versions
+	 * did.
+	 */
+	public void setCollapseCharArrays(boolean collapse) {
+		this.collapseCharArrays = collapse;
+	}
+
+	/**
+	 * The pool files are leased from. When null every read opens and closes
+	 * its own handles.
+	 */
+	public NetcdfFilePool getFilePool() {
+		return filePool;
+	}
+
+	/**
+	 * Set the pool files are leased from, such as
+	 * {@link NetcdfFilePool#shared()}. Defaults to null: every read opens
+	 * the file, reads it and closes it again.
+	 */
+	public void setFilePool(NetcdfFilePool pool) {
+		this.filePool = pool;
+	}
+
+	/**
+	 * The full name of the group whose subtree is read. When null (the
+	 * default) the whole file is read.
+	 */
+	public String getGroupPath() {
+		return groupPath;
+	}
+
+	/**
+	 * Limit reading to the variables of one group and its subgroups, such as
+	 * "/forecast/surface". Variables outside it are never read. Pass null to
+	 * read the whole file.
+	 */
+	public void setGroupPath(String path) {
+		this.groupPath = path;
+	}
+
+	/**
+	 * Whether variables are kept in the NetCDF order they were read in and
+	 * viewed through {@link NativeOrderStorage}.
+	 */
+	public boolean isNativeOrderViews() {
+		return nativeOrderViews;
+	}
+
+	/**
+	 * Set whether variables are kept in the NetCDF order they were read in
+	 * and viewed through {@link NativeOrderStorage} rather than copied into
+	 * zorbage order. Views need about half the peak memory and skip the
+	 * reordering copy but every access remaps its index. Variables that are
+	 * unpacked, go off heap or do not fit in one java array are still
+	 * copied. Classic format variables without scale_factor or add_offset
+	 * are viewed right in the memory mapped file: nothing is read up front
+	 * and the view is read only. Defaults to false.
+	 */
+	public void setNativeOrderViews(boolean views) {
+		this.nativeOrderViews = views;
+	}
+
+	/**
+	 * The cache decoded chunks are kept in between reads. Null (the
+	 * default) when there is none.
+	 */
+	public DiskChunkCache getChunkCache() {
+		return chunkCache;
+	}
+
+	/**
+	 * Keep the decoded values of each chunk read from a local NetCDF-4 file
+	 * in a cache on disk. Values are cached one native chunk at a time (see
+	 * {@link DiskChunkCache#chunkShape}) so later reads map them rather than
+	 * decompressing them again whatever sections or read buffer size they
+	 * use. Strided sections are not cached. Classic format files are mapped
+	 * directly and never cached. Pass null to stop caching.
+	 */
+	public void setChunkCache(DiskChunkCache cache) {
+		this.chunkCache = cache;
+	}
+
+	/**
+	 * The capacity of the strings of String variables whose values are not
+	 * in hand when their storage is made.
+	 */
+	public int getStringWidth() {
+		return stringWidth;
+	}
+
+	/**
+	 * Set the capacity of the fixed strings that String variables are
+	 * imported as when their storage is made before their values are read:
+	 * lazy views from openVariable() and aggregate() and the records of
+	 * readRecords(). Longer values are cut short. Reads that have the values
+	 * in hand size their strings to the longest one read instead. Defaults
+	 * to 256.
+	 */
+	public void setStringWidth(int width) {
+		if (width < 1)
+			throw new IllegalArgumentException("string width must be positive");
+		this.stringWidth = width;
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A read running on a caller supplied executor. The read's future is the
+ * task itself. Cancelling it stops the read at the next chunk boundary:
+ * the chunk loops in NetCDF check the task that started them before every
+ * chunk they decode, including the loops running on the decode pool.
+ * <p>
+ * Only the read supplies the result. Callers can cancel the task or fail
+ * it with completeExceptionally() (as orTimeout() does), which stops the
+ * read like a cancel. Completing it with a value or obtruding one throws
+ * an UnsupportedOperationException.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class ReadTask<V> extends CompletableFuture<V> implements Runnable {
+
+	// the task whose read is running on this thread. the chunk loops capture
+	//   it on the reading thread and hand it to any decode pool workers.
+	
+	private static final ThreadLocal<ReadTask<?>> CURRENT = new ThreadLocal<>();
+	
+	private final Callable<V> read;
+	
+	private ReadTask(Callable<V> read) {
+		this.read = read;
+	}
+	
+	// start read on executor and return its future
+	
+	static <V> CompletableFuture<V> submit(Callable<V> read, Executor executor) {
+		
+		ReadTask<V> task = new ReadTask<>(read);
+		
+		try {
+			
+			executor.execute(task);
+			
+		} catch (RejectedExecutionException e) {
+			
+			task.fail(e);
+		}
+		
+		return task;
+	}
+	
+	// the task of the read running on this thread or null for a blocking read
+	
+	static ReadTask<?> current() {
+		return CURRENT.get();
+	}
+	
+	// throw if the read of task has been cancelled or failed from outside.
+	//   task can be null.
+	
+	static void checkCancelled(ReadTask<?> task, String varName) throws InterruptedIOException {
+		
+		if (task != null && task.isDone())
+			throw new InterruptedIOException("Read of "+varName+" was cancelled");
+	}
+	
+	@Override
+	public void run() {
+		
+		// cancelled before it ever started
+		
+		if (isDone())
+			return;
+		
+		CURRENT.set(this);
+		
+		try {
+			
+			super.complete(read.call());
+			
+		} catch (Throwable t) {
+			
+			// a no-op when the failure came from being cancelled
+			
+			fail(t);
+			
+		} finally {
+			
+			CURRENT.remove();
+		}
+	}
+	
+	private void fail(Throwable t) {
+		super.completeExceptionally(t);
+	}
+	
+	@Override
+	public boolean complete(V value) {
+		throw new UnsupportedOperationException("only the read can complete its task");
+	}
+	
+	@Override
+	public CompletableFuture<V> completeAsync(Supplier<? extends V> supplier) {
+		throw new UnsupportedOperationException("only the read can complete its task");
+	}
+	
+	@Override
+	public CompletableFuture<V> completeAsync(Supplier<? extends V> supplier, Executor executor) {
+		throw new UnsupportedOperationException("only the read can complete its task");
+	}
+	
+	@Override
+	public CompletableFuture<V> completeOnTimeout(V value, long timeout, TimeUnit unit) {
+		throw new UnsupportedOperationException("only the read can complete its task");
+	}
+	
+	@Override
+	public void obtrudeValue(V value) {
+		throw new UnsupportedOperationException("only the read can complete its task");
+	}
+	
+	@Override
+	public void obtrudeException(Throwable ex) {
+		throw new UnsupportedOperationException("only the read can complete its task");
+	}
+}
@@ -0,0 +1,250 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import nom.bdezonia.zorbage.algebra.Addition;
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.ScaleByDouble;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.Storage;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.Variable;
+
+/**
+ * Iterates the records of a NetCDF variable one at a time. A record is one
+ * position along the variable's outermost dimension (its unlimited dimension
+ * for record variables). Each record is read with its own Section into a
+ * data source that is reused for every record, so memory use does not grow
+ * with the number of records. The data source returned by next() is
+ * overwritten by the following call to next(); copy it if it must be kept.
+ * <p>
+ * Optionally the next record is read from disk on a background thread while
+ * the current one is being processed.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class RecordIterator<T extends Algebra<T,U> & Addition<U> & ScaleByDouble<U>, U>
+
+	implements Iterator<Tuple2<T, DimensionedDataSource<U>>>, Closeable
+{
+	private final NetcdfFilePool.Lease lease;
+	private final Variable var;
+	private final Decoder decoder;
+	private final int numRecords;
+	private final int[] recordShape;
+	private final LayoutTransform layout;
+	private final IndexedDataSource<Object> storage;
+	private final Object scratch;
+	private final Tuple2<T, DimensionedDataSource<U>> result;
+	private final ExecutorService prefetcher;
+	private Future<Array> pending;
+	private int record;
+	
+	@SuppressWarnings("unchecked")
+	RecordIterator(NetcdfFilePool.Lease lease, Variable var, URI fileURI, Decoder decoder, boolean prefetch) {
+		
+		if (var.getRank() == 0)
+			throw new IllegalArgumentException("Variable "+var.getShortName()+" has no records");
+		
+		this.lease = lease;
+		this.var = var;
+		this.decoder = decoder;
+		this.numRecords = var.getShape(0);
+		
+		this.recordShape = var.getShape();
+		recordShape[0] = 1;
+		this.layout = new LayoutTransform(recordShape);
+		
+		long[] dims = NetCDF.zorbageDims(recordShape);
+		long total = 1;
+		for (int i = 0; i < dims.length; i++) {
+			total *= dims[i];
+		}
+		this.storage = (IndexedDataSource<Object>) Storage.allocate(decoder.type, total);
+		this.scratch = decoder.type.allocate();
+		
+		DimensionedDataSource<U> ds =
+				NetCDF.wrap(var, fileURI, dims, NetCDF.zorbageAxisLabels(var), (IndexedDataSource<U>) storage);
+		
+		this.result = new Tuple2<T, DimensionedDataSource<U>>((T) decoder.algebra, ds);
+		
+		this.record = 0;
+		
+		if (prefetch) {
+			
+			this.prefetcher = Executors.newSingleThreadExecutor(r -> {
+				Thread t = new Thread(r, "netcdf record prefetch");
+				t.setDaemon(true);
+				return t;
+			});
+			
+			if (numRecords > 0)
+				this.pending = prefetcher.submit(() -> read(0));
+		}
+		else {
+			
+			this.prefetcher = null;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		return record < numRecords;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public Tuple2<T, DimensionedDataSource<U>> next() {
+		
+		if (!hasNext())
+			throw new NoSuchElementException();
+		
+		try {
+			
+			Array array;
+			
+			if (prefetcher == null) {
+				
+				array = read(record);
+			}
+			else {
+				
+				array = pending.get();
+				
+				// the prefetch thread is the only one that touches the file
+				
+				int following = record + 1;
+				
+				pending = (following < numRecords) ? prefetcher.submit(() -> read(following)) : null;
+			}
+			
+			record++;
+			
+			NetCDF.copyChunk(var, array, new int[recordShape.length], recordShape, layout,
+								decoder.copier, scratch, storage);
+			
+			if (!decoder.unpacked) {
+				
+				NetCDF.rescale(var, (T) decoder.algebra, (IndexedDataSource<U>) storage);
+			}
+			
+			return result;
+			
+		} catch (IOException e) {
+			
+			throw new UncheckedIOException(e);
+			
+		} catch (InterruptedException e) {
+			
+			Thread.currentThread().interrupt();
+			
+			throw new IllegalStateException("Interrupted while reading "+var.getShortName(), e);
+			
+		} catch (ExecutionException e) {
+			
+			if (e.getCause() instanceof IOException)
+				throw new UncheckedIOException((IOException) e.getCause());
+			
+			throw new IllegalStateException("Could not read "+var.getShortName(), e.getCause());
+		}
+	}
+
+	/**
+	 * The number of records the variable has.
+	 */
+	public int numRecords() {
+		return numRecords;
+	}
+
+	/**
+	 * The index of the record returned by the most recent call to next().
+	 * Returns -1 if next() has not been called yet.
+	 */
+	public int recordIndex() {
+		return record - 1;
+	}
+
+	/**
+	 * Stop any prefetching and give back the NetCDF file. If a prefetch is
+	 * still reading after a minute the file is closed rather than given
+	 * back to its pool.
+	 */
+	@Override
+	public void close() throws IOException {
+		
+		// a read in flight must finish before another user can lease the file
+		
+		boolean idle = true;
+		
+		if (prefetcher != null) {
+			prefetcher.shutdownNow();
+			try {
+				idle = prefetcher.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException e) {
+				idle = prefetcher.isTerminated();
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		if (idle)
+			lease.close();
+		else
+			lease.discard();
+	}
+
+	private Array read(int rec) throws IOException {
+		
+		int[] origin = new int[var.getRank()];
+		origin[0] = rec;
+		
+		int[] shape = var.getShape();
+		shape[0] = 1;
+
+		try {
+			
+			return var.read(new Section(origin, shape));
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IllegalArgumentException("Bad record "+rec+" for "+var.getShortName()+": "+e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+
+/**
+ * A RowCopier moves a run of primitive values out of the 1-d java array that
+ * backs a NetCDF Array and into consecutive positions of a zorbage data source.
+ * There is one implementation per NetCDF data type so the inner loop only ever
+ * sees one array type and one zorbage member type.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+interface RowCopier<U> {
+
+	/**
+	 * 
+	 * @param src The 1-d java array (float[], short[], etc.) holding NetCDF
+	 *   values. Copiers that do not unpack also take a typed nio buffer when
+	 *   dst is a PrimitiveArrayStorage of the same primitive type.
+	 * @param srcPos The first position in src to copy from
+	 * @param value A scratch zorbage value used to move data into the destination
+	 * @param dst The zorbage data source to copy into
+	 * @param dstPos The first position in dst to copy to
+	 * @param count The number of values to copy
+	 */
+	void copy(Object src, int srcPos, U value, IndexedDataSource<U> dst, long dstPos, int count);
+}
@@ -0,0 +1,49 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+
+/**
+ * A RowExtractor is the reverse of a {@link RowCopier}. It moves a run of
+ * consecutive values out of a zorbage data source and into the 1-d java
+ * array that backs a NetCDF Array about to be written. There is one
+ * implementation per zorbage member type.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+interface RowExtractor<U> {
+
+	/**
+	 * 
+	 * @param src The zorbage data source to copy from
+	 * @param srcPos The first position in src to copy from
+	 * @param value A scratch zorbage value used to move data out of the source
+	 * @param dst The 1-d java array (float[], short[], etc.) to copy into
+	 * @param dstPos The first position in dst to copy to
+	 * @param count The number of values to copy
+	 */
+	void copy(IndexedDataSource<U> src, long srcPos, U value, Object dst, int dstPos, int count);
+}
@@ -0,0 +1,359 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import nom.bdezonia.zorbage.algebra.Addition;
+import nom.bdezonia.zorbage.algebra.Algebra;
+import nom.bdezonia.zorbage.algebra.Allocatable;
+import nom.bdezonia.zorbage.algebra.ScaleByDouble;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.storage.Storage;
+import nom.bdezonia.zorbage.storage.StorageConstruction;
+import ucar.ma2.Array;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.Variable;
+
+/**
+ * A read only IndexedDataSource that pulls the values of a NetCDF variable
+ * from an open file as they are accessed. Values are read a tile at a time.
+ * Tiles match the variable's HDF5 / NetCDF-4 chunk shape when it has one.
+ * Otherwise tiles span whole rows and as many outer rows as fit in about a
+ * million values. Decoded tiles are kept in a least recently used cache of
+ * bounded size.
+ * <p>
+ * Indices are in zorbage order: the NetCDF axes are reversed and the Y axis
+ * is flipped, exactly like the data read by {@link NetCDF#readAllDatasets}.
+ * <p>
+ * Setting a value throws an UnsupportedOperationException.
+ * <p>
+ * Duplicates share the open file but each has its own cache and must be
+ * closed on its own. The file is given back once all of them are closed.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class TileCachedStorage<T extends Algebra<T,U> & Addition<U> & ScaleByDouble<U>, U>
+
+	implements IndexedDataSource<U>, Closeable
+{
+	private static final long DEFAULT_TILE_ELEMENTS = 1024 * 1024;
+	
+	private final SharedLease shared;
+	private final NetcdfFile file;
+	private final Variable var;
+	private final T algebra;
+	@SuppressWarnings("rawtypes")
+	private final Allocatable type;
+	private final RowCopier<U> copier;
+	private final int maxTiles;
+	private final int[] shape;
+	private final int[] tileShape;
+	private final long[] tileCounts;
+	private final long[] zorbageDims;
+	private final long size;
+	private final int[] coord;
+	private final U scratch;
+	private final LinkedHashMap<Long, IndexedDataSource<U>> tiles;
+	private long hits;
+	private long misses;
+	private boolean closed;
+	
+	// the lease of the file and how many duplicates still use it
+	
+	private static final class SharedLease {
+		
+		private final NetcdfFilePool.Lease lease;
+		private int users = 1;
+		
+		SharedLease(NetcdfFilePool.Lease lease) {
+			this.lease = lease;
+		}
+	}
+	
+	@SuppressWarnings("rawtypes")
+	TileCachedStorage(NetcdfFilePool.Lease lease, Variable var, T algebra, Allocatable type, RowCopier<?> copier, int maxTiles)
+	{
+		this(new SharedLease(lease), var, algebra, type, copier, maxTiles);
+	}
+	
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private TileCachedStorage(SharedLease shared, Variable var, T algebra, Allocatable type, RowCopier<?> copier, int maxTiles)
+	{
+		this.shared = shared;
+		this.file = shared.lease.file();
+		this.var = var;
+		this.algebra = algebra;
+		this.type = type;
+		this.copier = (RowCopier<U>) copier;
+		this.maxTiles = maxTiles;
+		
+		// a rank 0 variable is treated as a list of one value
+		
+		this.shape = (var.getRank() == 0) ? new int[] {1} : var.getShape();
+		this.tileShape = tileShape(var, shape);
+		this.tileCounts = new long[shape.length];
+		for (int i = 0; i < shape.length; i++) {
+			tileCounts[i] = (shape[i] + tileShape[i] - 1) / tileShape[i];
+		}
+		this.zorbageDims = NetCDF.zorbageDims(shape);
+		long sz = 1;
+		for (int i = 0; i < shape.length; i++) {
+			sz *= shape[i];
+		}
+		this.size = sz;
+		this.coord = new int[shape.length];
+		this.scratch = (U) type.allocate();
+		this.tiles = new LinkedHashMap<Long, IndexedDataSource<U>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, IndexedDataSource<U>> eldest) {
+				return size() > TileCachedStorage.this.maxTiles;
+			}
+		};
+	}
+	
+	@Override
+	public TileCachedStorage<T,U> duplicate() {
+		synchronized (shared) {
+			if (shared.users == 0)
+				throw new IllegalStateException("Cannot duplicate a closed data source");
+			shared.users++;
+		}
+		return new TileCachedStorage<T,U>(shared, var, algebra, type, copier, maxTiles);
+	}
+
+	@Override
+	public void set(long index, U value) {
+		throw new UnsupportedOperationException("Lazily read NetCDF data cannot be modified");
+	}
+
+	@Override
+	public synchronized void get(long index, U value) {
+
+		if (index < 0 || index >= size)
+			throw new IllegalArgumentException("index out of bounds");
+		
+		// zorbage dim k is netcdf dim rank-1-k and zorbage dim 1 is Y flipped
+		
+		int rank = shape.length;
+		long rem = index;
+		for (int k = 0; k < rank; k++) {
+			long pos = rem % zorbageDims[k];
+			rem /= zorbageDims[k];
+			int j = rank - 1 - k;
+			coord[j] = (int) ((k == 1) ? (shape[j] - 1 - pos) : pos);
+		}
+		
+		// find the tile and the offset of the value within it
+		
+		long tileNum = 0;
+		long offset = 0;
+		long tileStride = 1;
+		for (int j = 0; j < rank; j++) {
+			int t = coord[j] / tileShape[j];
+			int origin = t * tileShape[j];
+			int extent = Math.min(tileShape[j], shape[j] - origin);
+			tileNum = tileNum * tileCounts[j] + t;
+			offset = offset * extent + (coord[j] - origin);
+		}
+		
+		IndexedDataSource<U> tile = tiles.get(tileNum);
+		if (tile == null) {
+			misses++;
+			tile = loadTile(tileNum);
+			tiles.put(tileNum, tile);
+		}
+		else {
+			hits++;
+		}
+		
+		tile.get(offset, value);
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public StorageConstruction storageType() {
+		return StorageConstruction.MEM_VIRTUAL;
+	}
+
+	@Override
+	public boolean accessWithOneThread() {
+		return false;
+	}
+
+	/**
+	 * Stop using the NetCDF file this data source reads from. The file is
+	 * given back when this data source and all its duplicates are closed.
+	 * Closing twice does nothing.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		synchronized (shared) {
+			if (--shared.users > 0)
+				return;
+		}
+		shared.lease.close();
+	}
+
+	/**
+	 * The maximum number of tiles the cache will hold.
+	 */
+	public int maxCachedTiles() {
+		return maxTiles;
+	}
+
+	/**
+	 * The number of tiles currently held in the cache.
+	 */
+	public synchronized int cachedTiles() {
+		return tiles.size();
+	}
+
+	/**
+	 * The number of value reads that were satisfied by a cached tile.
+	 */
+	public synchronized long hits() {
+		return hits;
+	}
+
+	/**
+	 * The number of value reads that needed a tile to be read from the file.
+	 */
+	public synchronized long misses() {
+		return misses;
+	}
+
+	/**
+	 * The shape of a tile in NetCDF dimension order.
+	 */
+	public int[] tileShape() {
+		return tileShape.clone();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private IndexedDataSource<U> loadTile(long tileNum) {
+		
+		int rank = shape.length;
+		int[] origin = new int[rank];
+		int[] extent = new int[rank];
+		long rem = tileNum;
+		long count = 1;
+		for (int j = rank - 1; j >= 0; j--) {
+			long t = rem % tileCounts[j];
+			rem /= tileCounts[j];
+			origin[j] = (int) (t * tileShape[j]);
+			extent[j] = Math.min(tileShape[j], shape[j] - origin[j]);
+			count *= extent[j];
+		}
+		
+		Array array;
+		
+		// the file is shared by duplicates and NetcdfFile is not thread safe
+		
+		synchronized (file) {
+			
+			try {
+			
+				array = (var.getRank() == 0) ? var.read() : var.read(new Section(origin, extent));
+				
+			} catch (IOException e) {
+				
+				throw new IllegalStateException("Could not read tile of "+var.getShortName()+": "+e.getMessage(), e);
+				
+			} catch (InvalidRangeException e) {
+				
+				throw new IllegalStateException("Bad tile for "+var.getShortName()+": "+e.getMessage(), e);
+			}
+		}
+		
+		Object data = array.get1DJavaArray(array.getDataType());
+		
+		IndexedDataSource<U> tile = (IndexedDataSource<U>) Storage.allocate(type, count);
+		
+		copier.copy(data, 0, scratch, tile, 0, (int) count);
+		
+		NetCDF.rescale(var, algebra, tile);
+		
+		return tile;
+	}
+	
+	// use the chunk shape if the file records one. otherwise make tiles out of
+	//   whole rows and as many of the outer dims as fit DEFAULT_TILE_ELEMENTS.
+	
+	private static int[] tileShape(Variable var, int[] shape) {
+		
+		int rank = shape.length;
+		
+		int[] tile = shape.clone();
+		
+		Attribute chunking = var.attributes().findAttribute("_ChunkSizes");
+		
+		if (chunking != null && chunking.getLength() == rank && var.getRank() == rank) {
+			
+			for (int i = 0; i < rank; i++) {
+				Number n = chunking.getNumericValue(i);
+				int chunk = (n == null) ? shape[i] : n.intValue();
+				tile[i] = Math.max(1, Math.min(chunk, shape[i]));
+			}
+			
+			return tile;
+		}
+
+		long elements = 1;
+		for (int i = 0; i < rank; i++) {
+			tile[i] = Math.max(1, tile[i]);
+			elements *= tile[i];
+		}
+		
+		for (int i = 0; i < rank && elements > DEFAULT_TILE_ELEMENTS; i++) {
+			long inner = elements / tile[i];
+			long want = Math.max(1, DEFAULT_TILE_ELEMENTS / inner);
+			if (want < tile[i]) {
+				tile[i] = (int) want;
+			}
+			elements = inner * tile[i];
+		}
+		
+		return tile;
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+
+/**
+ * A RowCopier that unpacks CF packed values as it copies them. Each packed
+ * value is widened to a double, multiplied by scale_factor, has add_offset
+ * added to it, and is stored in a Float32Member or a Float64Member. Packed
+ * values CF marks as missing become NaN instead. This replaces the separate
+ * scale and offset passes over the imported data.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+class UnpackingRowCopier implements RowCopier<Object> {
+
+	private enum Source { BYTE, UBYTE, SHORT, USHORT, INT, UINT, LONG, ULONG, FLOAT, DOUBLE }
+	
+	private final Source source;
+	private final boolean toFloat;
+	private final double scale;
+	private final double offset;
+	private final MissingValues missing;
+	
+	private UnpackingRowCopier(Source source, boolean toFloat, double scale, double offset, MissingValues missing) {
+		this.source = source;
+		this.toFloat = toFloat;
+		this.scale = scale;
+		this.offset = offset;
+		this.missing = missing;
+	}
+	
+	/**
+	 * 
+	 * @param netcdfType The NetCDF type of the packed values.
+	 * @param unsigned True if the packed values are flagged with _Unsigned.
+	 * @param toFloat True to unpack into Float32Members. False to unpack into
+	 *   Float64Members.
+	 * @param scale The scale_factor (1 when absent).
+	 * @param offset The add_offset (0 when absent).
+	 * @param missing The packed values that are not data. Can be null.
+	 * @return A copier or null if values of the type can't be unpacked.
+	 */
+	static UnpackingRowCopier of(String netcdfType, boolean unsigned, boolean toFloat, double scale, double offset,
+									MissingValues missing)
+	{
+		
+		Source source;
+		
+		if (netcdfType.equals("byte") || netcdfType.equals("enum1"))
+			source = unsigned ? Source.UBYTE : Source.BYTE;
+		else if (netcdfType.equals("ubyte"))
+			source = Source.UBYTE;
+		else if (netcdfType.equals("short") || netcdfType.equals("enum2"))
+			source = unsigned ? Source.USHORT : Source.SHORT;
+		else if (netcdfType.equals("ushort"))
+			source = Source.USHORT;
+		else if (netcdfType.equals("int") || netcdfType.equals("enum4"))
+			source = unsigned ? Source.UINT : Source.INT;
+		else if (netcdfType.equals("uint"))
+			source = Source.UINT;
+		else if (netcdfType.equals("long"))
+			source = unsigned ? Source.ULONG : Source.LONG;
+		else if (netcdfType.equals("ulong"))
+			source = Source.ULONG;
+		else if (netcdfType.equals("float"))
+			source = Source.FLOAT;
+		else if (netcdfType.equals("double"))
+			source = Source.DOUBLE;
+		else
+			return null;
+		
+		return new UnpackingRowCopier(source, toFloat, scale, offset, missing);
+	}
+	
+	// the switch is made once per row and each case is a tight loop
+	
+	@Override
+	public void copy(Object src, int srcPos, Object out, IndexedDataSource<Object> dst, long dstPos, int count) {
+		
+		switch (source) {
+		
+		case BYTE: {
+			byte[] data = (byte[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i], out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case UBYTE: {
+			byte[] data = (byte[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i] & 0xff, out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case SHORT: {
+			short[] data = (short[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i], out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case USHORT: {
+			short[] data = (short[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i] & 0xffff, out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case INT: {
+			int[] data = (int[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i], out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case UINT: {
+			int[] data = (int[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i] & 0xffffffffL, out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case LONG: {
+			long[] data = (long[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i], out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case ULONG: {
+			long[] data = (long[]) src;
+			for (int i = 0; i < count; i++) {
+				long v = data[srcPos+i];
+				double d = (v >= 0) ? v : ((v & Long.MAX_VALUE) + 0x1p63);
+				put(d, out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case FLOAT: {
+			float[] data = (float[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i], out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		case DOUBLE: {
+			double[] data = (double[]) src;
+			for (int i = 0; i < count; i++) {
+				put(data[srcPos+i], out, dst, dstPos+i);
+			}
+			break;
+		}
+		
+		}
+	}
+	
+	private void put(double packed, Object out, IndexedDataSource<Object> dst, long pos) {
+		
+		double v = (missing != null && missing.isMissing(packed)) ? Double.NaN : packed * scale + offset;
+		
+		if (toFloat)
+			((Float32Member) out).setV((float) v);
+		else
+			((Float64Member) out).setV(v);
+		
+		dst.set(pos, out);
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.util.Collections;
+import java.util.Map;
+
+import nom.bdezonia.zorbage.algebra.Algebra;
+
+/**
+ * A description of one NetCDF variable made from the file header alone. No
+ * data values are read to make one. The dims and axis labels are the ones
+ * the data source made by {@link NetCDF#readAllDatasets} would have.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class VariableDescription {
+
+	private final String name;
+	private final String dataType;
+	private final int[] netcdfShape;
+	private final long[] dims;
+	private final String[] axisLabels;
+	private final Algebra<?,?> algebra;
+	private final String units;
+	private final Double scale;
+	private final Double offset;
+	private final Map<String,String> attributes;
+	
+	VariableDescription(String name, String dataType, int[] netcdfShape, long[] dims, String[] axisLabels,
+						Algebra<?,?> algebra, String units, Double scale, Double offset,
+						Map<String,String> attributes)
+	{
+		this.name = name;
+		this.dataType = dataType;
+		this.netcdfShape = netcdfShape;
+		this.dims = dims;
+		this.axisLabels = axisLabels;
+		this.algebra = algebra;
+		this.units = units;
+		this.scale = scale;
+		this.offset = offset;
+		this.attributes = Collections.unmodifiableMap(attributes);
+	}
+
+	/**
+	 * The full name of the variable. Pass this to readVariable() and friends.
+	 */
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * The NetCDF data type of the variable ("float", "short", etc.).
+	 */
+	public String dataType() {
+		return dataType;
+	}
+
+	/**
+	 * The shape of the variable in NetCDF dimension order.
+	 */
+	public int[] netcdfShape() {
+		return netcdfShape.clone();
+	}
+
+	/**
+	 * The dims of the zorbage data source the variable is read into.
+	 */
+	public long[] dims() {
+		return dims.clone();
+	}
+
+	/**
+	 * The axis labels of the zorbage data source the variable is read into.
+	 */
+	public String[] axisLabels() {
+		return axisLabels.clone();
+	}
+
+	/**
+	 * The zorbage algebra the variable is read with. Null when the variable's
+	 * type is not supported.
+	 */
+	public Algebra<?,?> algebra() {
+		return algebra;
+	}
+
+	/**
+	 * The units of the variable's values. Can be null.
+	 */
+	public String units() {
+		return units;
+	}
+
+	/**
+	 * The variable's scale_factor or null if it has none.
+	 */
+	public Double scale() {
+		return scale;
+	}
+
+	/**
+	 * The variable's add_offset or null if it has none.
+	 */
+	public Double offset() {
+		return offset;
+	}
+
+	/**
+	 * All of the variable's attributes as strings keyed by attribute name.
+	 */
+	public Map<String,String> attributes() {
+		return attributes;
+	}
+}
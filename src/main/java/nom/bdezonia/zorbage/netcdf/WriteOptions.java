@@ -0,0 +1,135 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+/**
+ * WriteOptions tune how {@link NetCDF} writes a data source to a file. A
+ * freshly constructed WriteOptions writes an uncompressed NetCDF-4 file.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class WriteOptions {
+
+	/**
+	 * The kinds of file that can be written.
+	 */
+	public enum Format {
+		
+		/** The classic format. Cannot hold 64 bit integers or strings. */
+		NETCDF3,
+		
+		/** The HDF5 based format. Needs the native netCDF-C library. */
+		NETCDF4
+	}
+	
+	private Format format = Format.NETCDF4;
+	private long[] chunkShape = null;
+	private int deflateLevel = 0;
+	private boolean shuffle = false;
+	private long writeBufferSize = 64L * 1024 * 1024;
+
+	/**
+	 * The kind of file written.
+	 */
+	public Format getFormat() {
+		return format;
+	}
+
+	/**
+	 * Set the kind of file written. Defaults to NETCDF4. When the native
+	 * netCDF-C library is missing writing NETCDF4 fails with an IOException.
+	 */
+	public void setFormat(Format format) {
+		if (format == null)
+			throw new IllegalArgumentException("format cannot be null");
+		this.format = format;
+	}
+
+	/**
+	 * The NetCDF-4 chunk shape in zorbage axis order or null for a default.
+	 */
+	public long[] getChunkShape() {
+		return chunkShape;
+	}
+
+	/**
+	 * Set the NetCDF-4 chunk shape in zorbage axis order (x first). Sizes
+	 * larger than the data are clipped. Pass null (the default) for chunks
+	 * of whole rows holding about a million values.
+	 */
+	public void setChunkShape(long[] shape) {
+		this.chunkShape = (shape == null) ? null : shape.clone();
+	}
+
+	/**
+	 * The NetCDF-4 deflate level.
+	 */
+	public int getDeflateLevel() {
+		return deflateLevel;
+	}
+
+	/**
+	 * Set the NetCDF-4 deflate level from 0 (no compression, the default)
+	 * to 9 (most compression).
+	 */
+	public void setDeflateLevel(int level) {
+		if (level < 0 || level > 9)
+			throw new IllegalArgumentException("deflate level must be between 0 and 9");
+		this.deflateLevel = level;
+	}
+
+	/**
+	 * Whether the NetCDF-4 shuffle filter is applied before deflating.
+	 */
+	public boolean isShuffle() {
+		return shuffle;
+	}
+
+	/**
+	 * Set whether the NetCDF-4 shuffle filter is applied before deflating.
+	 * Defaults to false.
+	 */
+	public void setShuffle(boolean shuffle) {
+		this.shuffle = shuffle;
+	}
+
+	/**
+	 * The most bytes of values gathered in memory before they are written.
+	 */
+	public long getWriteBufferSize() {
+		return writeBufferSize;
+	}
+
+	/**
+	 * Set the most bytes of values gathered in memory before they are
+	 * written. Values are written in row major slabs no bigger than this.
+	 * Defaults to 64 MB.
+	 */
+	public void setWriteBufferSize(long bytes) {
+		if (bytes < 1)
+			throw new IllegalArgumentException("write buffer size must be positive");
+		this.writeBufferSize = bytes;
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.real.float32.Float32Algebra;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+
+/**
+ * Checks that a variable joined across files reads like one file holding
+ * all of its records.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class AggregateTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRecordsFollowOneAnother() throws IOException {
+		
+		assertJoins(new int[] {3, 4, 5}, new int[] {2, 4, 5});
+	}
+	
+	@Test
+	public void testFlippedRankTwo() throws IOException {
+		
+		assertJoins(new int[] {3, 5}, new int[] {2, 5});
+	}
+	
+	@Test
+	public void testMismatchedShapesAreRefused() throws IOException {
+		
+		Path dir = folder.getRoot().toPath();
+		
+		URI first = Fixtures.classic(dir, "first.nc", new int[] {3, 4, 5}, true, DataType.FLOAT);
+		URI second = Fixtures.classic(dir, "second.nc", new int[] {3, 4, 6}, true, DataType.FLOAT);
+		
+		try {
+			NetCDF.<Float32Algebra,Float32Member>aggregate(Arrays.asList(first, second), Fixtures.name(DataType.FLOAT), 2, 2);
+			fail("joined variables of different shapes");
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+	
+	// join two record files and compare with a whole read of one file holding
+	//   the records of both
+	
+	@SuppressWarnings("unchecked")
+	private void assertJoins(int[] firstShape, int[] secondShape) throws IOException {
+		
+		Path dir = folder.newFolder().toPath();
+		
+		URI first = Fixtures.classic(dir, "first.nc", firstShape, true, DataType.FLOAT);
+		
+		// values unlike the first file's so records out of order are noticed
+		
+		int count = 1;
+		for (int i = 0; i < secondShape.length; i++) {
+			count *= secondShape[i];
+		}
+		
+		URI second = Fixtures.holding(dir, "second.nc", Array.makeArray(DataType.FLOAT, count, 1000, 1).reshape(secondShape));
+		
+		float[] a = values(first);
+		float[] b = values(second);
+		
+		float[] joined = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, joined, a.length, b.length);
+		
+		int[] joinedShape = firstShape.clone();
+		joinedShape[0] += secondShape[0];
+		
+		URI whole = Fixtures.holding(dir, "whole.nc", Array.factory(DataType.FLOAT, joinedShape, joined));
+		
+		DimensionedDataSource<Float32Member> expected = Fixtures.read(whole, DataType.FLOAT, joinedShape, new ReadOptions());
+		
+		List<URI> files = Arrays.asList(first, second);
+		
+		// one file open at a time so reading switches between them
+		
+		Tuple2<Float32Algebra, DimensionedDataSource<Float32Member>> data =
+				NetCDF.<Float32Algebra,Float32Member>aggregate(files, Fixtures.name(DataType.FLOAT), 1, 2);
+		
+		assertNotNull(expected);
+		assertNotNull(data);
+		
+		AggregatedStorage<Float32Algebra,Float32Member> storage =
+				(AggregatedStorage<Float32Algebra,Float32Member>) data.b().rawData();
+		
+		try {
+			
+			assertEquals(2, storage.numFiles());
+			
+			assertEquals(expected.numDimensions(), data.b().numDimensions());
+			for (int k = 0; k < expected.numDimensions(); k++) {
+				assertEquals(expected.dimension(k), data.b().dimension(k));
+			}
+			
+			assertEquals(expected.rawData().size(), storage.size());
+			
+			Float32Member e = G.FLT.construct();
+			Float32Member v = G.FLT.construct();
+			
+			for (long i = 0; i < storage.size(); i++) {
+				expected.rawData().get(i, e);
+				storage.get(i, v);
+				assertEquals(e.v(), v.v(), 0);
+			}
+			
+			assertTrue(storage.openFiles() <= 1);
+			
+		} finally {
+			
+			storage.close();
+		}
+	}
+	
+	private static float[] values(URI uri) throws IOException {
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString())) {
+			
+			return (float[]) file.findVariable(Fixtures.name(DataType.FLOAT)).read().get1DJavaArray(DataType.FLOAT);
+		}
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+/**
+ * Checks the classic format header parser against netcdf-java: every
+ * value read through a ClassicFormat must match what netcdf-java reads.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ClassicFormatTest {
+
+	private static final int[] SHAPE = {3, 4, 5};
+	
+	private static final DataType[] TYPES = {
+			DataType.BYTE, DataType.CHAR, DataType.SHORT, DataType.INT, DataType.FLOAT, DataType.DOUBLE
+	};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testWholeVariablesMatchNetcdfJava() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "types.nc", SHAPE, false, TYPES);
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString());
+				ClassicFormat classic = ClassicFormat.open(uri))
+		{
+			assertNotNull(classic);
+			
+			for (DataType type : TYPES) {
+				
+				Variable var = file.findVariable(Fixtures.name(type));
+				
+				Object expected = var.read().get1DJavaArray(var.getDataType());
+				
+				assertTrue(type.toString(), Objects.deepEquals(expected, classic.read(var, null)));
+			}
+		}
+	}
+	
+	@Test
+	public void testOuterSlabsMatchNetcdfJava() throws IOException, InvalidRangeException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "slabs.nc", SHAPE, false, TYPES);
+		
+		Section slab = new Section(new int[] {1, 0, 0}, new int[] {2, 4, 5});
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString());
+				ClassicFormat classic = ClassicFormat.open(uri))
+		{
+			for (DataType type : TYPES) {
+				
+				Variable var = file.findVariable(Fixtures.name(type));
+				
+				Object expected = var.read(slab).get1DJavaArray(var.getDataType());
+				
+				assertTrue(type.toString(), Objects.deepEquals(expected, classic.read(var, slab)));
+			}
+		}
+	}
+	
+	@Test
+	public void testMappedValuesMatchNetcdfJava() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "mapped.nc", SHAPE, false, TYPES);
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString());
+				ClassicFormat classic = ClassicFormat.open(uri))
+		{
+			Variable var = file.findVariable(Fixtures.name(DataType.FLOAT));
+			
+			float[] expected = (float[]) var.read().get1DJavaArray(DataType.FLOAT);
+			
+			FloatBuffer values = (FloatBuffer) classic.values(var, null);
+			
+			assertEquals(expected.length, values.limit());
+			
+			for (int i = 0; i < expected.length; i++) {
+				assertEquals(expected[i], values.get(i), 0);
+			}
+			
+			// char variables have no buffer view
+			
+			assertNull(classic.values(file.findVariable(Fixtures.name(DataType.CHAR)), null));
+		}
+	}
+	
+	@Test
+	public void testUnsupportedReadsFallBack() throws IOException, InvalidRangeException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "records.nc", SHAPE, true, DataType.FLOAT);
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString());
+				ClassicFormat classic = ClassicFormat.open(uri))
+		{
+			assertNotNull(classic);
+			
+			Variable var = file.findVariable(Fixtures.name(DataType.FLOAT));
+			
+			// record variables are interleaved
+			
+			assertNull(classic.read(var, null));
+			assertNull(classic.values(var, null));
+		}
+		
+		uri = Fixtures.classic(folder.getRoot().toPath(), "inner.nc", SHAPE, false, DataType.FLOAT);
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString());
+				ClassicFormat classic = ClassicFormat.open(uri))
+		{
+			Variable var = file.findVariable(Fixtures.name(DataType.FLOAT));
+			
+			// only slabs of the outer dimension are contiguous
+			
+			assertNull(classic.read(var, new Section(new int[] {0, 1, 0}, new int[] {3, 2, 5})));
+		}
+	}
+	
+	@Test
+	public void testOtherFilesAreNotClassic() throws IOException {
+		
+		Path text = folder.newFile("notes.txt").toPath();
+		
+		Files.write(text, "not a NetCDF file".getBytes("UTF-8"));
+		
+		assertNull(ClassicFormat.open(text.toUri()));
+		
+		assertNull(ClassicFormat.open(URI.create("https://example.com/data.nc")));
+	}
+}
@@ -0,0 +1,232 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.misc.DataBundle;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Checks that reading variables concurrently gives the bundle a sequential
+ * read does and reports the variables it could not read.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ConcurrentReadTest {
+
+	private static final int VARIABLES = 8;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testConcurrentMatchesSequential() throws IOException {
+		
+		URI uri = floats(folder.getRoot().toPath());
+		
+		DataBundle sequential = NetCDF.readAllDatasets(uri);
+		
+		assertEquals(VARIABLES, sequential.flts.size());
+		
+		assertSameBundles(sequential, NetCDF.readAllDatasets(uri, 4));
+		
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		
+		try {
+			
+			assertSameBundles(sequential, NetCDF.readAllDatasets(uri, executor));
+			
+		} finally {
+			
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testFailuresAreReported() throws Exception {
+		
+		URI uri = floats(folder.getRoot().toPath());
+		
+		// the file goes away after its variables are listed but before any is read
+		
+		ThreadPoolExecutor executor =
+				new ThreadPoolExecutor(2, 2, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()) {
+			
+			@Override
+			protected void beforeExecute(Thread t, Runnable r) {
+				try {
+					Files.deleteIfExists(Paths.get(uri));
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+		};
+		
+		List<String> failed = Collections.synchronizedList(new ArrayList<>());
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setVariableExecutor(executor);
+		
+		options.setImportListener(new ImportListener() {
+			
+			@Override
+			public void phaseCompleted(String source, String variable, Phase phase, long nanos, long bytes, long allocatedBytes) {
+			}
+			
+			@Override
+			public void failed(String source, String variable, Throwable error) {
+				failed.add(variable);
+			}
+		});
+		
+		try {
+			
+			DataBundle bundle = NetCDF.readAllDatasets(uri, options);
+			
+			assertEquals(0, bundle.flts.size());
+			
+			assertEquals(VARIABLES, failed.size());
+			
+			// in file order
+			
+			for (int v = 0; v < VARIABLES; v++) {
+				assertEquals("v"+v, failed.get(v));
+			}
+			
+		} finally {
+			
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testMissingFileIsReported() {
+		
+		URI uri = folder.getRoot().toPath().resolve("absent.nc").toUri();
+		
+		List<String> failed = new ArrayList<>();
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setImportListener(new ImportListener() {
+			
+			@Override
+			public void phaseCompleted(String source, String variable, Phase phase, long nanos, long bytes, long allocatedBytes) {
+			}
+			
+			@Override
+			public void failed(String source, String variable, Throwable error) {
+				failed.add(variable);
+			}
+		});
+		
+		DataBundle bundle = NetCDF.readAllDatasets(uri, options);
+		
+		assertEquals(0, bundle.flts.size());
+		
+		assertEquals(1, failed.size());
+		assertNull(failed.get(0));
+	}
+	
+	private static void assertSameBundles(DataBundle expected, DataBundle actual) {
+		
+		assertEquals(expected.flts.size(), actual.flts.size());
+		
+		Float32Member a = G.FLT.construct();
+		Float32Member b = G.FLT.construct();
+		
+		for (int v = 0; v < expected.flts.size(); v++) {
+			
+			DimensionedDataSource<Float32Member> e = expected.flts.get(v);
+			DimensionedDataSource<Float32Member> f = actual.flts.get(v);
+			
+			assertEquals(e.getName(), f.getName());
+			assertEquals(e.rawData().size(), f.rawData().size());
+			
+			for (long i = 0; i < e.rawData().size(); i++) {
+				e.rawData().get(i, a);
+				f.rawData().get(i, b);
+				assertEquals(a.v(), b.v(), 0);
+			}
+		}
+	}
+	
+	// float variables v0, v1, ... each holding its own ramp
+	
+	private static URI floats(Path dir) throws IOException {
+		
+		Path path = dir.resolve("floats.nc");
+		
+		NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		
+		builder.addDimension("y", 12);
+		builder.addDimension("x", 20);
+		
+		for (int v = 0; v < VARIABLES; v++) {
+			builder.addVariable("v"+v, DataType.FLOAT, "y x");
+		}
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			for (int v = 0; v < VARIABLES; v++) {
+				Array ramp = Array.makeArray(DataType.FLOAT, 240, 1000 * v, 1).reshape(new int[] {12, 20});
+				writer.write(writer.findVariable("v"+v), ramp);
+			}
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path.toUri();
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.FloatBuffer;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+/**
+ * Checks that values served from a DiskChunkCache are the values in the
+ * file. The fixtures hold record variables since contiguous classic
+ * variables are mapped rather than cached.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class DiskChunkCacheTest {
+
+	private static final int[] SHAPE = {6, 10, 12};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testHitsReturnTheSameValues() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "cached.nc", SHAPE, true, DataType.FLOAT);
+		
+		File directory = folder.newFolder("cache");
+		
+		DiskChunkCache cache = new DiskChunkCache(directory, 1024 * 1024);
+		
+		DimensionedDataSource<Float32Member> uncached = Fixtures.read(uri, DataType.FLOAT, SHAPE, new ReadOptions());
+		
+		DimensionedDataSource<Float32Member> first = Fixtures.read(uri, DataType.FLOAT, SHAPE, options(cache));
+		
+		assertTrue(cache.misses() > 0);
+		assertEquals(0, cache.hits());
+		
+		long misses = cache.misses();
+		
+		DimensionedDataSource<Float32Member> second = Fixtures.read(uri, DataType.FLOAT, SHAPE, options(cache));
+		
+		assertTrue(cache.hits() > 0);
+		assertEquals(misses, cache.misses());
+		
+		// entries outlive the cache object that wrote them
+		
+		DiskChunkCache reopened = new DiskChunkCache(directory, 1024 * 1024);
+		
+		DimensionedDataSource<Float32Member> third = Fixtures.read(uri, DataType.FLOAT, SHAPE, options(reopened));
+		
+		assertTrue(reopened.hits() > 0);
+		assertEquals(0, reopened.misses());
+		
+		assertSameValues(uncached, first);
+		assertSameValues(uncached, second);
+		assertSameValues(uncached, third);
+	}
+	
+	@Test
+	public void testSectionsMatchNetcdfJava() throws IOException, InvalidRangeException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "sections.nc", SHAPE, true, DataType.FLOAT);
+		
+		DiskChunkCache cache = new DiskChunkCache(folder.newFolder("cache"), 1024 * 1024);
+		
+		Section[] sections = {
+				new Section(SHAPE),
+				new Section(new int[] {1, 2, 3}, new int[] {4, 5, 6}),
+				new Section(new int[] {5, 0, 0}, new int[] {1, 10, 12})
+		};
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString())) {
+			
+			Variable var = file.findVariable(Fixtures.name(DataType.FLOAT));
+			
+			// each section twice: once filling the cache and once from it
+			
+			for (int pass = 0; pass < 2; pass++) {
+				
+				for (Section section : sections) {
+					
+					float[] expected = (float[]) var.read(section).get1DJavaArray(DataType.FLOAT);
+					
+					Object values = cache.read(uri, var, section);
+					
+					assertNotNull(values);
+					
+					for (int i = 0; i < expected.length; i++) {
+						float actual = (values instanceof FloatBuffer) ? ((FloatBuffer) values).get(i) : ((float[]) values)[i];
+						assertEquals(expected[i], actual, 0);
+					}
+				}
+			}
+		}
+		
+		assertTrue(cache.hits() > 0);
+	}
+	
+	private static ReadOptions options(DiskChunkCache cache) {
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setChunkCache(cache);
+		
+		return options;
+	}
+	
+	private static void assertSameValues(DimensionedDataSource<Float32Member> expected, DimensionedDataSource<Float32Member> actual) {
+		
+		assertNotNull(expected);
+		assertNotNull(actual);
+		assertEquals(expected.rawData().size(), actual.rawData().size());
+		
+		Float32Member a = G.FLT.construct();
+		Float32Member b = G.FLT.construct();
+		
+		for (long i = 0; i < expected.rawData().size(); i++) {
+			expected.rawData().get(i, a);
+			actual.rawData().get(i, b);
+			assertEquals(a.v(), b.v(), 0);
+		}
+	}
+}
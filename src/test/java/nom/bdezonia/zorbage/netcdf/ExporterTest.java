@@ -0,0 +1,148 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.data.DimensionedStorage;
+import nom.bdezonia.zorbage.misc.DataBundle;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Member;
+import nom.bdezonia.zorbage.type.integer.int16.UnsignedInt16Algebra;
+import nom.bdezonia.zorbage.type.real.float32.Float32Algebra;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+
+/**
+ * Checks that data sources written to NetCDF files read back unchanged.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ExporterTest {
+
+	private static final long[] DIMS = {5, 4, 3};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testFloatsRoundTrip() throws IOException {
+		
+		DimensionedDataSource<Float32Member> data = DimensionedStorage.allocate(G.FLT.construct(), DIMS);
+		
+		Float32Member val = G.FLT.construct();
+		
+		for (long i = 0; i < data.rawData().size(); i++) {
+			val.setV(i * 0.5f);
+			data.rawData().set(i, val);
+		}
+		
+		URI uri = folder.getRoot().toPath().resolve("floats.nc").toUri();
+		
+		NetCDF.write(uri, "temperature", new Tuple2<Float32Algebra, DimensionedDataSource<Float32Member>>(G.FLT, data),
+						netcdf3());
+		
+		DataBundle bundle = NetCDF.readAllDatasets(uri, new ReadOptions());
+		
+		List<DimensionedDataSource<Float32Member>> read = new ArrayList<>();
+		for (DimensionedDataSource<Float32Member> ds : bundle.flts) {
+			read.add(ds);
+		}
+		
+		assertEquals(1, read.size());
+		
+		DimensionedDataSource<Float32Member> back = read.get(0);
+		
+		assertEquals(DIMS.length, back.numDimensions());
+		for (int k = 0; k < DIMS.length; k++) {
+			assertEquals(DIMS[k], back.dimension(k));
+		}
+		
+		Float32Member expected = G.FLT.construct();
+		Float32Member actual = G.FLT.construct();
+		
+		for (long i = 0; i < data.rawData().size(); i++) {
+			data.rawData().get(i, expected);
+			back.rawData().get(i, actual);
+			assertEquals(expected.v(), actual.v(), 0);
+		}
+	}
+	
+	@Test
+	public void testUnsignedRoundTripThroughNetcdf3() throws IOException {
+		
+		DimensionedDataSource<UnsignedInt16Member> data = DimensionedStorage.allocate(G.UINT16.construct(), DIMS);
+		
+		UnsignedInt16Member val = G.UINT16.construct();
+		
+		// values above 32767 only survive if _Unsigned is written and honored
+		
+		for (long i = 0; i < data.rawData().size(); i++) {
+			val.setV((int) (65535 - i * 1000));
+			data.rawData().set(i, val);
+		}
+		
+		URI uri = folder.getRoot().toPath().resolve("ushorts.nc").toUri();
+		
+		NetCDF.write(uri, "counts", new Tuple2<UnsignedInt16Algebra, DimensionedDataSource<UnsignedInt16Member>>(G.UINT16, data),
+						netcdf3());
+		
+		int[] shape = {(int) DIMS[2], (int) DIMS[1], (int) DIMS[0]};
+		
+		Tuple2<?, DimensionedDataSource<UnsignedInt16Member>> back =
+				NetCDF.readVariable(uri, "counts", new int[3], shape, null, new ReadOptions());
+		
+		assertNotNull(back);
+		
+		UnsignedInt16Member expected = G.UINT16.construct();
+		UnsignedInt16Member actual = G.UINT16.construct();
+		
+		for (long i = 0; i < data.rawData().size(); i++) {
+			data.rawData().get(i, expected);
+			back.b().rawData().get(i, actual);
+			assertEquals(expected.v(), actual.v());
+		}
+	}
+	
+	private static WriteOptions netcdf3() {
+		
+		WriteOptions options = new WriteOptions();
+		
+		options.setFormat(WriteOptions.Format.NETCDF3);
+		
+		return options;
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks that reads reuse pooled files and notice when a file changes.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class FilePoolTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testReadsReuseOneHandle() throws IOException {
+		
+		int[] shape = {3, 4, 5};
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "pooled.nc", shape, false, DataType.FLOAT);
+		
+		try (NetcdfFilePool pool = new NetcdfFilePool(4)) {
+			
+			ReadOptions options = new ReadOptions();
+			options.setFilePool(pool);
+			
+			for (int i = 0; i < 3; i++) {
+				
+				check(Fixtures.read(uri, DataType.FLOAT, shape, options), 60);
+				
+				assertEquals(1, pool.idleCount());
+			}
+			
+			List<VariableDescription> descriptions = NetCDF.describe(uri, options);
+			
+			assertEquals(1, descriptions.size());
+			assertArrayEquals(shape, descriptions.get(0).netcdfShape());
+			assertEquals(1, pool.idleCount());
+		}
+	}
+	
+	@Test
+	public void testChangedFileIsReopened() throws IOException {
+		
+		int[] before = {3, 4, 5};
+		int[] after = {2, 6, 5};
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "changing.nc", before, false, DataType.FLOAT);
+		
+		try (NetcdfFilePool pool = new NetcdfFilePool(4)) {
+			
+			ReadOptions options = new ReadOptions();
+			options.setFilePool(pool);
+			
+			check(Fixtures.read(uri, DataType.FLOAT, before, options), 60);
+			
+			// same name, new shape and length
+			
+			Fixtures.classic(folder.getRoot().toPath(), "changing.nc", after, false, DataType.FLOAT);
+			
+			check(Fixtures.read(uri, DataType.FLOAT, after, options), 60);
+			
+			assertArrayEquals(after, NetCDF.describe(uri, options).get(0).netcdfShape());
+			
+			assertEquals(1, pool.idleCount());
+		}
+	}
+	
+	@Test
+	public void testUnpooledReadsSeeChanges() throws IOException {
+		
+		int[] before = {4, 5};
+		int[] after = {6, 5};
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "unpooled.nc", before, false, DataType.FLOAT);
+		
+		check(Fixtures.read(uri, DataType.FLOAT, before, new ReadOptions()), 20);
+		
+		Fixtures.classic(folder.getRoot().toPath(), "unpooled.nc", after, false, DataType.FLOAT);
+		
+		check(Fixtures.read(uri, DataType.FLOAT, after, new ReadOptions()), 30);
+	}
+	
+	private static void check(DimensionedDataSource<Float32Member> data, long size) {
+		
+		assertNotNull(data);
+		assertEquals(size, data.rawData().size());
+		
+		// the ramp is in netcdf order. check the values as a set by their sum.
+		
+		Float32Member val = G.FLT.construct();
+		
+		double sum = 0;
+		for (long i = 0; i < size; i++) {
+			data.rawData().get(i, val);
+			sum += val.v();
+		}
+		
+		assertEquals(size * (size - 1) / 2.0, sum, 0);
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.IndexIterator;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Writes the small classic format files the tests read. Every variable
+ * holds a ramp so that a value out of place is noticed.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+final class Fixtures {
+
+	private static final String[] DIM_NAMES = {"t", "z", "y", "x"};
+	
+	private Fixtures() { }
+	
+	/**
+	 * The name of the variable of a type in a fixture file.
+	 */
+	static String name(DataType type) {
+		return type.toString() + "_var";
+	}
+	
+	/**
+	 * The value at row major position i of a variable of a type.
+	 */
+	static double value(DataType type, int i) {
+		if (type == DataType.CHAR)
+			return 'a' + i % 26;
+		if (type == DataType.BYTE)
+			return i % 100;
+		if (type == DataType.SHORT)
+			return i % 30000;
+		return i;
+	}
+	
+	/**
+	 * Write a classic file holding one ramp variable of each type.
+	 * 
+	 * @param dir The directory to make the file in.
+	 * @param fileName The name of the file.
+	 * @param shape The shape of every variable. At most rank 4.
+	 * @param record True to make the first dimension the unlimited one.
+	 * @param types The types of the variables.
+	 * @return The file's URI.
+	 * @throws IOException
+	 */
+	static URI classic(Path dir, String fileName, int[] shape, boolean record, DataType... types) throws IOException {
+		
+		Path path = dir.resolve(fileName);
+		
+		NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		
+		int rank = shape.length;
+		
+		StringBuilder dimString = new StringBuilder();
+		for (int i = 0; i < rank; i++) {
+			String dim = DIM_NAMES[DIM_NAMES.length - rank + i];
+			if (i == 0 && record)
+				builder.addUnlimitedDimension(dim);
+			else
+				builder.addDimension(dim, shape[i]);
+			if (i > 0)
+				dimString.append(' ');
+			dimString.append(dim);
+		}
+		
+		for (DataType type : types) {
+			builder.addVariable(name(type), type, dimString.toString());
+		}
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			for (DataType type : types) {
+				writer.write(writer.findVariable(name(type)), ramp(type, shape));
+			}
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path.toUri();
+	}
+	
+	/**
+	 * Write a classic file holding one variable with the given values. The
+	 * variable is named for the values' type and has their shape. Tests
+	 * read it whole to get what a partial read of a ramp should return.
+	 * 
+	 * @param dir The directory to make the file in.
+	 * @param fileName The name of the file.
+	 * @param values The values to write. At most rank 4.
+	 * @return The file's URI.
+	 * @throws IOException
+	 */
+	static URI holding(Path dir, String fileName, Array values) throws IOException {
+		
+		Path path = dir.resolve(fileName);
+		
+		NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		
+		int[] shape = values.getShape();
+		
+		int rank = shape.length;
+		
+		StringBuilder dimString = new StringBuilder();
+		for (int i = 0; i < rank; i++) {
+			String dim = DIM_NAMES[DIM_NAMES.length - rank + i];
+			builder.addDimension(dim, shape[i]);
+			if (i > 0)
+				dimString.append(' ');
+			dimString.append(dim);
+		}
+		
+		builder.addVariable(name(values.getDataType()), values.getDataType(), dimString.toString());
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			writer.write(writer.findVariable(name(values.getDataType())), values);
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path.toUri();
+	}
+	
+	/**
+	 * Read the whole of the variable of a type from a fixture file.
+	 * 
+	 * @return The data source or null if the read failed.
+	 */
+	static <U> DimensionedDataSource<U> read(URI uri, DataType type, int[] shape, ReadOptions options) {
+		
+		Tuple2<?, DimensionedDataSource<U>> data =
+				NetCDF.readVariable(uri, name(type), new int[shape.length], shape, null, options);
+		
+		return (data == null) ? null : data.b();
+	}
+	
+	private static Array ramp(DataType type, int[] shape) {
+		
+		Array array = Array.factory(type, shape);
+		
+		IndexIterator iter = array.getIndexIterator();
+		
+		int i = 0;
+		
+		while (iter.hasNext()) {
+			
+			double v = value(type, i++);
+			
+			if (type == DataType.CHAR)
+				iter.setCharNext((char) v);
+			else
+				iter.setDoubleNext(v);
+		}
+		
+		return array;
+	}
+}
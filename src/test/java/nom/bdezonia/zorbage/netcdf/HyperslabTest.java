@@ -0,0 +1,154 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.Variable;
+
+/**
+ * Checks that reading part of a variable gives what netcdf-java reads for
+ * the same section, laid out as readAllDatasets lays out a whole variable.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class HyperslabTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testWindows() throws Exception {
+		
+		int[] shape = {6, 8, 10};
+		
+		for (boolean record : new boolean[] {false, true}) {
+			
+			URI uri = Fixtures.classic(folder.getRoot().toPath(), "window-"+record+".nc", shape, record, DataType.FLOAT);
+			
+			assertMatches(uri, new int[] {0, 0, 0}, shape, null);
+			assertMatches(uri, new int[] {1, 2, 3}, new int[] {4, 5, 6}, null);
+			assertMatches(uri, new int[] {5, 0, 0}, new int[] {1, 8, 10}, null);
+			assertMatches(uri, new int[] {2, 3, 4}, new int[] {1, 1, 1}, null);
+		}
+	}
+	
+	@Test
+	public void testStrides() throws Exception {
+		
+		int[] shape = {6, 8, 10};
+		
+		for (boolean record : new boolean[] {false, true}) {
+			
+			URI uri = Fixtures.classic(folder.getRoot().toPath(), "stride-"+record+".nc", shape, record, DataType.FLOAT);
+			
+			assertMatches(uri, new int[] {0, 0, 0}, shape, new int[] {2, 3, 4});
+			assertMatches(uri, new int[] {1, 1, 1}, new int[] {5, 7, 9}, new int[] {5, 2, 3});
+		}
+	}
+	
+	@Test
+	public void testFlippedRankTwo() throws Exception {
+		
+		int[] shape = {8, 10};
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "plane.nc", shape, false, DataType.FLOAT);
+		
+		assertMatches(uri, new int[] {2, 1}, new int[] {5, 7}, null);
+		assertMatches(uri, new int[] {1, 0}, new int[] {7, 10}, new int[] {3, 2});
+	}
+	
+	// the slab read must equal a whole read of a file holding just the
+	//   values netcdf-java reads for the same section
+	
+	private void assertMatches(URI uri, int[] origin, int[] span, int[] stride)
+		throws IOException, InvalidRangeException
+	{
+		Section section = (stride == null) ? new Section(origin, span) : new Section(origin, span, stride);
+		
+		Array values;
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString())) {
+			
+			Variable var = file.findVariable(Fixtures.name(DataType.FLOAT));
+			
+			values = var.read(section).copy();
+		}
+		
+		Path dir = folder.newFolder().toPath();
+		
+		URI whole = Fixtures.holding(dir, "expected.nc", values);
+		
+		DimensionedDataSource<Float32Member> expected =
+				Fixtures.read(whole, DataType.FLOAT, values.getShape(), new ReadOptions());
+		
+		Tuple2<?, DimensionedDataSource<Float32Member>> actual =
+				NetCDF.readVariable(uri, Fixtures.name(DataType.FLOAT), origin, span, stride);
+		
+		assertNotNull(expected);
+		assertNotNull(actual);
+		
+		assertEquals(expected.numDimensions(), actual.b().numDimensions());
+		for (int k = 0; k < expected.numDimensions(); k++) {
+			assertEquals(expected.dimension(k), actual.b().dimension(k));
+		}
+		
+		assertSameValues(expected, actual.b());
+	}
+	
+	private static void assertSameValues(DimensionedDataSource<Float32Member> expected, DimensionedDataSource<Float32Member> actual) {
+		
+		assertEquals(expected.rawData().size(), actual.rawData().size());
+		
+		Float32Member a = G.FLT.construct();
+		Float32Member b = G.FLT.construct();
+		
+		for (long i = 0; i < expected.rawData().size(); i++) {
+			expected.rawData().get(i, a);
+			actual.rawData().get(i, b);
+			assertEquals(a.v(), b.v(), 0);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.sampling.IntegerIndex;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks that NetCDF values land in zorbage order: axes reversed and the
+ * Y axis flipped.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class LayoutTransformTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testIndexReversesAxesAndFlipsY() {
+		
+		LayoutTransform layout = new LayoutTransform(new int[] {2, 3, 4});
+		
+		for (int z = 0; z < 2; z++) {
+			for (int y = 0; y < 3; y++) {
+				for (int x = 0; x < 4; x++) {
+					assertEquals(x + 4L * ((2 - y) + 3L * z), layout.index(new int[] {z, y, x}));
+				}
+			}
+		}
+		
+		assertEquals(12, layout.stride(0));
+		assertEquals(-4, layout.stride(1));
+		assertEquals(1, layout.stride(2));
+	}
+	
+	@Test
+	public void testRank1IsNotFlipped() {
+		
+		LayoutTransform layout = new LayoutTransform(new int[] {5});
+		
+		for (int x = 0; x < 5; x++) {
+			assertEquals(x, layout.index(new int[] {x}));
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testRowCopiersPlaceChunks() throws IOException {
+		
+		int[] shape = {2, 3, 4};
+		
+		float[] values = new float[24];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i;
+		}
+		
+		LayoutTransform layout = new LayoutTransform(shape);
+		
+		DimensionedDataSource<Object> ds =
+				NetCDF.allocate(G.FLT.construct(), NetCDF.zorbageDims(shape), new ReadOptions());
+		
+		// one chunk per z plane, copied out of order
+		
+		for (int z = 1; z >= 0; z--) {
+			
+			float[] plane = Arrays.copyOfRange(values, z * 12, z * 12 + 12);
+			
+			NetCDF.copyChunk(null, plane, plane.length, new int[] {z, 0, 0}, new int[] {1, 3, 4}, layout,
+								(RowCopier<Object>) NetCDF.rowCopier("float"), G.FLT.construct(), ds.rawData());
+		}
+		
+		Float32Member val = G.FLT.construct();
+		
+		for (int z = 0; z < 2; z++) {
+			for (int y = 0; y < 3; y++) {
+				for (int x = 0; x < 4; x++) {
+					ds.rawData().get(x + 4L * ((2 - y) + 3L * z), val);
+					assertEquals(values[(z * 3 + y) * 4 + x], val.v(), 0);
+				}
+			}
+		}
+	}
+	
+	@Test
+	public void testReadVariableFlipsY() throws IOException {
+		
+		int[] shape = {3, 4};
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "flip.nc", shape, false, DataType.FLOAT);
+		
+		DimensionedDataSource<Float32Member> ds = Fixtures.read(uri, DataType.FLOAT, shape, new ReadOptions());
+		
+		assertNotNull(ds);
+		assertEquals(2, ds.numDimensions());
+		assertEquals(4, ds.dimension(0));
+		assertEquals(3, ds.dimension(1));
+		
+		IntegerIndex idx = new IntegerIndex(2);
+		
+		Float32Member val = G.FLT.construct();
+		
+		for (int y = 0; y < 3; y++) {
+			for (int x = 0; x < 4; x++) {
+				idx.set(0, x);
+				idx.set(1, 2 - y);
+				ds.get(idx, val);
+				assertEquals(Fixtures.value(DataType.FLOAT, y * 4 + x), val.v(), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testReadVariableReversesAxes() throws IOException {
+		
+		int[] shape = {2, 3, 5};
+		
+		// a record variable is read through netcdf-java rather than mapped
+		
+		for (boolean record : new boolean[] {false, true}) {
+			
+			URI uri = Fixtures.classic(folder.getRoot().toPath(), "axes-"+record+".nc", shape, record, DataType.SHORT);
+			
+			DimensionedDataSource<SignedInt16Member> ds = Fixtures.read(uri, DataType.SHORT, shape, new ReadOptions());
+			
+			assertNotNull(ds);
+			assertEquals(3, ds.numDimensions());
+			assertEquals(5, ds.dimension(0));
+			assertEquals(3, ds.dimension(1));
+			assertEquals(2, ds.dimension(2));
+			
+			IntegerIndex idx = new IntegerIndex(3);
+			
+			SignedInt16Member val = G.INT16.construct();
+			
+			for (int z = 0; z < 2; z++) {
+				for (int y = 0; y < 3; y++) {
+					for (int x = 0; x < 5; x++) {
+						idx.set(0, x);
+						idx.set(1, 2 - y);
+						idx.set(2, z);
+						ds.get(idx, val);
+						assertEquals(Fixtures.value(DataType.SHORT, (z * 3 + y) * 5 + x), val.v(), 0);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.Attribute;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Checks that packed variables mask their invalid values in the units CF
+ * gives their valid range.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class MissingValuesTest {
+
+	// packed shorts 0 to 59 unpacked as 0.5 * p + 10
+	
+	private static final int COUNT = 60;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRangeInPackedUnits() throws IOException {
+		
+		Array range = Array.factory(DataType.SHORT, new int[] {2}, new short[] {0, 40});
+		
+		URI uri = packed(folder.getRoot().toPath(), "packed_range.nc", Attribute.fromArray("valid_range", range));
+		
+		assertValid(uri, 0, 40);
+	}
+	
+	@Test
+	public void testRangeInUnpackedUnits() throws IOException {
+		
+		// the type of scale_factor so the same range as above once unpacked
+		
+		Array range = Array.factory(DataType.FLOAT, new int[] {2}, new float[] {10, 30});
+		
+		URI uri = packed(folder.getRoot().toPath(), "unpacked_range.nc", Attribute.fromArray("valid_range", range));
+		
+		assertValid(uri, 0, 40);
+	}
+	
+	@Test
+	public void testMaxInUnpackedUnits() throws IOException {
+		
+		URI uri = packed(folder.getRoot().toPath(), "unpacked_max.nc", new Attribute("valid_max", 20f));
+		
+		assertValid(uri, 0, 20);
+	}
+	
+	// the packed values first to last are valid and all others are NaN
+	
+	private static void assertValid(URI uri, int first, int last) {
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setUnpackScaleOffset(true);
+		
+		Tuple2<?, DimensionedDataSource<Float32Member>> data =
+				NetCDF.readVariable(uri, "packed", new int[1], new int[] {COUNT}, null, options);
+		
+		assertNotNull(data);
+		
+		Float32Member val = G.FLT.construct();
+		
+		int valid = 0;
+		double sum = 0;
+		
+		for (long i = 0; i < COUNT; i++) {
+			data.b().rawData().get(i, val);
+			if (!Float.isNaN(val.v())) {
+				valid++;
+				sum += val.v();
+			}
+		}
+		
+		double expected = 0;
+		for (int p = first; p <= last; p++) {
+			expected += 0.5 * p + 10;
+		}
+		
+		assertEquals(last - first + 1, valid);
+		assertEquals(expected, sum, 1e-6);
+	}
+	
+	private static URI packed(Path dir, String fileName, Attribute validity) throws IOException {
+		
+		Path path = dir.resolve(fileName);
+		
+		NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		
+		builder.addDimension("x", COUNT);
+		
+		builder.addVariable("packed", DataType.SHORT, "x")
+				.addAttribute(new Attribute("scale_factor", 0.5f))
+				.addAttribute(new Attribute("add_offset", 10f))
+				.addAttribute(validity);
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			writer.write(writer.findVariable("packed"), Array.makeArray(DataType.SHORT, COUNT, 0, 1));
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path.toUri();
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ReadOnlyBufferException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks that native order views give the values zorbage order storage
+ * does and that their duplicates are independent.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class NativeOrderStorageTest {
+
+	private static final int[] SHAPE = {3, 4, 5};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testViewsMatchReorderedReads() throws IOException {
+		
+		// a mapped variable and a record variable read through netcdf-java
+		
+		for (boolean record : new boolean[] {false, true}) {
+			
+			URI uri = Fixtures.classic(folder.getRoot().toPath(), "view-"+record+".nc", SHAPE, record, DataType.FLOAT);
+			
+			ReadOptions options = new ReadOptions();
+			
+			options.setNativeOrderViews(true);
+			
+			DimensionedDataSource<Float32Member> view = Fixtures.read(uri, DataType.FLOAT, SHAPE, options);
+			DimensionedDataSource<Float32Member> copied = Fixtures.read(uri, DataType.FLOAT, SHAPE, new ReadOptions());
+			
+			assertNotNull(view);
+			assertNotNull(copied);
+			assertTrue(view.rawData() instanceof NativeOrderStorage);
+			
+			Float32Member a = G.FLT.construct();
+			Float32Member b = G.FLT.construct();
+			
+			for (long i = 0; i < copied.rawData().size(); i++) {
+				copied.rawData().get(i, a);
+				view.rawData().get(i, b);
+				assertEquals(a.v(), b.v(), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testDuplicatesAreIndependent() {
+		
+		float[] values = new float[60];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = i;
+		}
+		
+		NativeOrderStorage<Float32Member> storage = NativeOrderStorage.of(G.FLT.construct(), values, SHAPE);
+		
+		assertNotNull(storage);
+		
+		NativeOrderStorage<Float32Member> copy = storage.duplicate();
+		
+		Float32Member val = G.FLT.construct();
+		
+		for (long i = 0; i < copy.size(); i++) {
+			storage.get(i, val);
+			float expected = val.v();
+			copy.get(i, val);
+			assertEquals(expected, val.v(), 0);
+			val.setV(-1);
+			copy.set(i, val);
+		}
+		
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(i, values[i], 0);
+		}
+	}
+	
+	@Test(expected = ReadOnlyBufferException.class)
+	public void testMappedViewsAreReadOnly() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "readonly.nc", SHAPE, false, DataType.FLOAT);
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setNativeOrderViews(true);
+		
+		DimensionedDataSource<Float32Member> view = Fixtures.read(uri, DataType.FLOAT, SHAPE, options);
+		
+		view.rawData().duplicate().set(0, G.FLT.construct());
+	}
+}
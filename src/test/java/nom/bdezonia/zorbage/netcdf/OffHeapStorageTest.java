@@ -0,0 +1,117 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks off heap storage and reads that land in it.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class OffHeapStorageTest {
+
+	private static final int[] SHAPE = {3, 4, 5};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testDuplicatesAreIndependent() throws IOException {
+		
+		for (File scratch : new File[] {null, folder.newFolder("scratch")}) {
+			
+			OffHeapStorage<Float32Member> storage = OffHeapStorage.allocate(G.FLT.construct(), 100, scratch);
+			
+			assertNotNull(storage);
+			assertEquals(scratch != null, storage.isFileBacked());
+			
+			Float32Member val = G.FLT.construct();
+			
+			for (long i = 0; i < storage.size(); i++) {
+				val.setV(i);
+				storage.set(i, val);
+			}
+			
+			OffHeapStorage<Float32Member> copy = storage.duplicate();
+			
+			assertEquals(storage.size(), copy.size());
+			assertEquals(storage.isFileBacked(), copy.isFileBacked());
+			
+			for (long i = 0; i < copy.size(); i++) {
+				copy.get(i, val);
+				assertEquals(i, val.v(), 0);
+				val.setV(-1);
+				copy.set(i, val);
+			}
+			
+			for (long i = 0; i < storage.size(); i++) {
+				storage.get(i, val);
+				assertEquals(i, val.v(), 0);
+			}
+		}
+	}
+	
+	@Test
+	public void testReadsAboveTheThresholdGoOffHeap() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "offheap.nc", SHAPE, false, DataType.FLOAT);
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setOffHeapThreshold(0);
+		
+		DimensionedDataSource<Float32Member> offHeap = Fixtures.read(uri, DataType.FLOAT, SHAPE, options);
+		DimensionedDataSource<Float32Member> onHeap = Fixtures.read(uri, DataType.FLOAT, SHAPE, new ReadOptions());
+		
+		assertNotNull(offHeap);
+		assertNotNull(onHeap);
+		assertTrue(offHeap.rawData() instanceof OffHeapStorage);
+		
+		Float32Member a = G.FLT.construct();
+		Float32Member b = G.FLT.construct();
+		
+		for (long i = 0; i < onHeap.rawData().size(); i++) {
+			onHeap.rawData().get(i, a);
+			offHeap.rawData().get(i, b);
+			assertEquals(a.v(), b.v(), 0);
+		}
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.datasource.IndexedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.real.float32.Float32Algebra;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks that lazily opened variables read the file's values a tile at a
+ * time.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class OpenVariableTest {
+
+	// planes of half a million values: two to a default tile so two tiles
+	
+	private static final int[] SHAPE = {3, 512, 1024};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testTilesHoldTheFilesValues() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "tiles.nc", SHAPE, false, DataType.FLOAT);
+		
+		DimensionedDataSource<Float32Member> expected = Fixtures.read(uri, DataType.FLOAT, SHAPE, new ReadOptions());
+		
+		Tuple2<Float32Algebra, DimensionedDataSource<Float32Member>> data =
+				NetCDF.<Float32Algebra,Float32Member>openVariable(uri, Fixtures.name(DataType.FLOAT), 1);
+		
+		assertNotNull(data);
+		
+		TileCachedStorage<Float32Algebra,Float32Member> tiles =
+				(TileCachedStorage<Float32Algebra,Float32Member>) data.b().rawData();
+		
+		try {
+			
+			assertArrayEquals(new int[] {2, 512, 1024}, tiles.tileShape());
+			
+			assertEquals(expected.numDimensions(), data.b().numDimensions());
+			for (int k = 0; k < expected.numDimensions(); k++) {
+				assertEquals(expected.dimension(k), data.b().dimension(k));
+			}
+			
+			assertSameValues(expected.rawData(), tiles);
+			
+			// walking the values in order reads each tile once
+			
+			assertEquals(2, tiles.misses());
+			assertEquals(tiles.size() - 2, tiles.hits());
+			assertEquals(1, tiles.cachedTiles());
+			
+		} finally {
+			
+			tiles.close();
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test
+	public void testDuplicatesOutliveTheOriginal() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "shared.nc", SHAPE, false, DataType.FLOAT);
+		
+		DimensionedDataSource<Float32Member> expected = Fixtures.read(uri, DataType.FLOAT, SHAPE, new ReadOptions());
+		
+		try (NetcdfFilePool pool = new NetcdfFilePool(4)) {
+			
+			ReadOptions options = new ReadOptions();
+			options.setFilePool(pool);
+			
+			Tuple2<Float32Algebra, DimensionedDataSource<Float32Member>> data =
+					NetCDF.<Float32Algebra,Float32Member>openVariable(uri, Fixtures.name(DataType.FLOAT), 2, options);
+			
+			TileCachedStorage<Float32Algebra,Float32Member> original =
+					(TileCachedStorage<Float32Algebra,Float32Member>) data.b().rawData();
+			
+			TileCachedStorage<Float32Algebra,Float32Member> copy = original.duplicate();
+			
+			original.close();
+			
+			// the duplicate still holds the file
+			
+			assertEquals(0, pool.idleCount());
+			
+			assertSameValues(expected.rawData(), copy);
+			
+			copy.close();
+			
+			assertEquals(1, pool.idleCount());
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Test(expected = UnsupportedOperationException.class)
+	public void testValuesCannotBeSet() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "readonly.nc", new int[] {4, 5}, false, DataType.FLOAT);
+		
+		Tuple2<Float32Algebra, DimensionedDataSource<Float32Member>> data =
+				NetCDF.<Float32Algebra,Float32Member>openVariable(uri, Fixtures.name(DataType.FLOAT), 1);
+		
+		try (TileCachedStorage<Float32Algebra,Float32Member> tiles =
+				(TileCachedStorage<Float32Algebra,Float32Member>) data.b().rawData())
+		{
+			tiles.set(0, G.FLT.construct());
+		}
+	}
+	
+	private static void assertSameValues(IndexedDataSource<Float32Member> expected, IndexedDataSource<Float32Member> actual) {
+		
+		assertEquals(expected.size(), actual.size());
+		
+		Float32Member a = G.FLT.construct();
+		Float32Member b = G.FLT.construct();
+		
+		for (long i = 0; i < expected.size(); i++) {
+			expected.get(i, a);
+			actual.get(i, b);
+			assertEquals(a.v(), b.v(), 0);
+		}
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.type.integer.int16.SignedInt16Member;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks that decoding a variable in parallel slabs gives exactly the
+ * values a single thread does.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ParallelDecodeTest {
+
+	private static final int[] SHAPE = {8, 16, 32};
+	
+	private static ForkJoinPool pool;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@BeforeClass
+	public static void startPool() {
+		pool = new ForkJoinPool(4);
+	}
+	
+	@AfterClass
+	public static void stopPool() {
+		pool.shutdown();
+	}
+	
+	@Test
+	public void testFloatsMatchSerialDecode() throws IOException {
+		
+		for (boolean record : new boolean[] {false, true}) {
+			
+			URI uri = Fixtures.classic(folder.getRoot().toPath(), "float-"+record+".nc", SHAPE, record, DataType.FLOAT);
+			
+			DimensionedDataSource<Float32Member> serial = Fixtures.read(uri, DataType.FLOAT, SHAPE, options(false));
+			DimensionedDataSource<Float32Member> parallel = Fixtures.read(uri, DataType.FLOAT, SHAPE, options(true));
+			
+			assertNotNull(serial);
+			assertNotNull(parallel);
+			assertEquals(serial.rawData().size(), parallel.rawData().size());
+			
+			Float32Member a = G.FLT.construct();
+			Float32Member b = G.FLT.construct();
+			
+			for (long i = 0; i < serial.rawData().size(); i++) {
+				serial.rawData().get(i, a);
+				parallel.rawData().get(i, b);
+				assertEquals(Float.floatToRawIntBits(a.v()), Float.floatToRawIntBits(b.v()));
+			}
+		}
+	}
+	
+	@Test
+	public void testShortsMatchSerialDecode() throws IOException {
+		
+		for (boolean record : new boolean[] {false, true}) {
+			
+			URI uri = Fixtures.classic(folder.getRoot().toPath(), "short-"+record+".nc", SHAPE, record, DataType.SHORT);
+			
+			DimensionedDataSource<SignedInt16Member> serial = Fixtures.read(uri, DataType.SHORT, SHAPE, options(false));
+			DimensionedDataSource<SignedInt16Member> parallel = Fixtures.read(uri, DataType.SHORT, SHAPE, options(true));
+			
+			assertNotNull(serial);
+			assertNotNull(parallel);
+			assertEquals(serial.rawData().size(), parallel.rawData().size());
+			
+			SignedInt16Member a = G.INT16.construct();
+			SignedInt16Member b = G.INT16.construct();
+			
+			for (long i = 0; i < serial.rawData().size(); i++) {
+				serial.rawData().get(i, a);
+				parallel.rawData().get(i, b);
+				assertEquals(a.v(), b.v());
+			}
+		}
+	}
+	
+	// small reads so there are many chunks for the pool to share
+	
+	private static ReadOptions options(boolean parallel) {
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setReadBufferSize(1024);
+		
+		if (parallel) {
+			options.setDecodePool(pool);
+			options.setParallelDecodeThreshold(0);
+		}
+		
+		return options;
+	}
+}
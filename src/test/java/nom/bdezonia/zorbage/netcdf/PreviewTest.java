@@ -0,0 +1,191 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import nom.bdezonia.zorbage.type.real.float64.Float64Member;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.Attribute;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.NetcdfFiles;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Checks that previews sample or average the values of a variable.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class PreviewTest {
+
+	private static final float FILL = -1;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testSampledPreviewTakesEveryStepthValue() throws IOException, InvalidRangeException {
+		
+		int[] shape = {6, 8, 10};
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "sampled.nc", shape, false, DataType.FLOAT);
+		
+		// at most 3 x 4 x 5 values: every other value along each axis
+		
+		Array values;
+		
+		try (NetcdfFile file = NetcdfFiles.open(Paths.get(uri).toString())) {
+			
+			Section every2nd = new Section(new int[3], new int[] {5, 7, 9}, new int[] {2, 2, 2});
+			
+			values = file.findVariable(Fixtures.name(DataType.FLOAT)).read(every2nd).copy();
+		}
+		
+		URI whole = Fixtures.holding(folder.newFolder().toPath(), "expected.nc", values);
+		
+		DimensionedDataSource<Float32Member> expected =
+				Fixtures.read(whole, DataType.FLOAT, values.getShape(), new ReadOptions());
+		
+		Tuple2<?, DimensionedDataSource<Float32Member>> preview =
+				NetCDF.readPreview(uri, Fixtures.name(DataType.FLOAT), new int[] {3, 4, 5}, false);
+		
+		assertNotNull(expected);
+		assertNotNull(preview);
+		
+		assertEquals(expected.numDimensions(), preview.b().numDimensions());
+		for (int k = 0; k < expected.numDimensions(); k++) {
+			assertEquals(expected.dimension(k), preview.b().dimension(k));
+		}
+		
+		Float32Member a = G.FLT.construct();
+		Float32Member b = G.FLT.construct();
+		
+		for (long i = 0; i < expected.rawData().size(); i++) {
+			expected.rawData().get(i, a);
+			preview.b().rawData().get(i, b);
+			assertEquals(a.v(), b.v(), 0);
+		}
+	}
+	
+	@Test
+	public void testAveragedPreviewSkipsFillValues() throws IOException {
+		
+		int rows = 4;
+		int cols = 6;
+		
+		URI uri = filled(folder.getRoot().toPath(), rows, cols);
+		
+		// 2 x 2 blocks. the fill value at 0,0 does not count.
+		
+		double[] means = new double[(rows / 2) * (cols / 2)];
+		
+		for (int i = 0; i < rows / 2; i++) {
+			for (int j = 0; j < cols / 2; j++) {
+				double sum = 0;
+				int count = 0;
+				for (int r = 2 * i; r < 2 * i + 2; r++) {
+					for (int c = 2 * j; c < 2 * j + 2; c++) {
+						if (r == 0 && c == 0)
+							continue;
+						sum += r * cols + c;
+						count++;
+					}
+				}
+				means[i * (cols / 2) + j] = sum / count;
+			}
+		}
+		
+		Array values = Array.factory(DataType.DOUBLE, new int[] {rows / 2, cols / 2}, means);
+		
+		URI whole = Fixtures.holding(folder.newFolder().toPath(), "expected.nc", values);
+		
+		DimensionedDataSource<Float64Member> expected =
+				Fixtures.read(whole, DataType.DOUBLE, values.getShape(), new ReadOptions());
+		
+		Tuple2<?, DimensionedDataSource<Float64Member>> preview =
+				NetCDF.readPreview(uri, "filled", new int[] {rows / 2, cols / 2}, true);
+		
+		assertNotNull(expected);
+		assertNotNull(preview);
+		
+		assertEquals(expected.rawData().size(), preview.b().rawData().size());
+		
+		Float64Member a = G.DBL.construct();
+		Float64Member b = G.DBL.construct();
+		
+		for (long i = 0; i < expected.rawData().size(); i++) {
+			expected.rawData().get(i, a);
+			preview.b().rawData().get(i, b);
+			assertEquals(a.v(), b.v(), 1e-12);
+		}
+	}
+	
+	// a float ramp with a _FillValue and the fill at its first position
+	
+	private static URI filled(Path dir, int rows, int cols) throws IOException {
+		
+		Path path = dir.resolve("filled.nc");
+		
+		NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		
+		builder.addDimension("y", rows);
+		builder.addDimension("x", cols);
+		
+		builder.addVariable("filled", DataType.FLOAT, "y x")
+				.addAttribute(new Attribute("_FillValue", FILL));
+		
+		Array ramp = Array.makeArray(DataType.FLOAT, rows * cols, 0, 1).reshape(new int[] {rows, cols});
+		
+		ramp.setFloat(0, FILL);
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			writer.write(writer.findVariable("filled"), ramp);
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path.toUri();
+	}
+}
@@ -0,0 +1,295 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ucar.ma2.DataType;
+
+/**
+ * Checks that cancelling an asynchronous read stops it.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class ReadTaskTest {
+
+	// 16 planes of 1 KB: one chunk per plane with a 1 KB read buffer
+	
+	private static final int[] SHAPE = {16, 16, 16};
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testCancelStopsBeforeTheNextChunk() throws Exception {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "cancel.nc", SHAPE, false, DataType.FLOAT);
+		
+		AtomicReference<CompletableFuture<?>> future = new AtomicReference<>();
+		
+		CountDownLatch submitted = new CountDownLatch(1);
+		
+		AtomicInteger chunks = new AtomicInteger();
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setReadBufferSize(1024);
+		
+		// the first chunk to be converted cancels the read
+		
+		options.setImportListener((source, variable, phase, nanos, bytes, allocatedBytes) -> {
+			
+			if (phase != ImportListener.Phase.CONVERT || chunks.incrementAndGet() != 1)
+				return;
+			
+			try {
+				submitted.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			future.get().cancel(true);
+		});
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			
+			CompletableFuture<?> read =
+					NetCDF.readVariableAsync(uri, Fixtures.name(DataType.FLOAT), new int[3], SHAPE, null, options, executor);
+			
+			future.set(read);
+			
+			submitted.countDown();
+			
+			try {
+				read.get(10, TimeUnit.SECONDS);
+				fail("a cancelled read completed");
+			} catch (CancellationException e) {
+				// expected
+			}
+			
+			// let the reading thread notice and wind down
+			
+			executor.shutdown();
+			
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			
+			assertTrue(read.isCancelled());
+			
+			assertEquals(1, chunks.get());
+			
+		} finally {
+			
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testCancelBeforeStartReadsNothing() throws Exception {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "unstarted.nc", SHAPE, false, DataType.FLOAT);
+		
+		AtomicInteger phases = new AtomicInteger();
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setImportListener((source, variable, phase, nanos, bytes, allocatedBytes) -> phases.incrementAndGet());
+		
+		// an executor that holds on to the read until it is told to run it
+		
+		List<Runnable> queued = new ArrayList<>();
+		
+		CompletableFuture<?> read =
+				NetCDF.readVariableAsync(uri, Fixtures.name(DataType.FLOAT), new int[3], SHAPE, null, options, queued::add);
+		
+		assertTrue(read.cancel(true));
+		
+		for (Runnable r : queued) {
+			r.run();
+		}
+		
+		assertTrue(read.isCancelled());
+		
+		assertEquals(0, phases.get());
+	}
+	
+	@Test
+	public void testCancelStopsNativeOrderViews() throws Exception {
+		
+		// a record variable is read rather than mapped
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "view.nc", SHAPE, true, DataType.FLOAT);
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setNativeOrderViews(true);
+		
+		assertStopsAfterRead(uri, DataType.FLOAT, SHAPE, options);
+	}
+	
+	@Test
+	public void testCancelStopsStringReads() throws Exception {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "strings.nc", SHAPE, false, DataType.CHAR);
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setCollapseCharArrays(true);
+		
+		assertStopsAfterRead(uri, DataType.CHAR, SHAPE, options);
+	}
+	
+	@Test
+	public void testCallersCannotCompleteARead() throws Exception {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "owned.nc", SHAPE, false, DataType.FLOAT);
+		
+		List<Runnable> queued = new ArrayList<>();
+		
+		CompletableFuture<?> read = NetCDF.readVariableAsync(uri, Fixtures.name(DataType.FLOAT), new int[3], SHAPE,
+																null, new ReadOptions(), queued::add);
+		
+		try {
+			read.complete(null);
+			fail("a caller completed a read");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		
+		try {
+			read.obtrudeValue(null);
+			fail("a caller obtruded a value");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		
+		for (Runnable r : queued) {
+			r.run();
+		}
+		
+		assertNotNull(read.get(10, TimeUnit.SECONDS));
+	}
+	
+	// cancel the read as soon as its values have been read and check that
+	//   nothing is done with them
+	
+	private static void assertStopsAfterRead(URI uri, DataType type, int[] shape, ReadOptions options) throws Exception {
+		
+		AtomicReference<CompletableFuture<?>> future = new AtomicReference<>();
+		
+		CountDownLatch submitted = new CountDownLatch(1);
+		
+		List<ImportListener.Phase> phases = new ArrayList<>();
+		
+		options.setImportListener((source, variable, phase, nanos, bytes, allocatedBytes) -> {
+			
+			phases.add(phase);
+			
+			if (phase != ImportListener.Phase.READ)
+				return;
+			
+			try {
+				submitted.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			
+			future.get().cancel(true);
+		});
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			
+			CompletableFuture<?> read =
+					NetCDF.readVariableAsync(uri, Fixtures.name(type), new int[shape.length], shape, null, options, executor);
+			
+			future.set(read);
+			
+			submitted.countDown();
+			
+			try {
+				read.get(10, TimeUnit.SECONDS);
+				fail("a cancelled read completed");
+			} catch (CancellationException e) {
+				// expected
+			}
+			
+			executor.shutdown();
+			
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			
+			assertEquals(ImportListener.Phase.READ, phases.get(phases.size()-1));
+			
+		} finally {
+			
+			executor.shutdownNow();
+		}
+	}
+	
+	@Test
+	public void testUncancelledReadCompletes() throws Exception {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "complete.nc", SHAPE, false, DataType.FLOAT);
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setReadBufferSize(1024);
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		
+		try {
+			
+			CompletableFuture<?> read =
+					NetCDF.readVariableAsync(uri, Fixtures.name(DataType.FLOAT), new int[3], SHAPE, null, options, executor);
+			
+			assertNotNull(read.get(10, TimeUnit.SECONDS));
+			
+		} finally {
+			
+			executor.shutdownNow();
+		}
+	}
+}
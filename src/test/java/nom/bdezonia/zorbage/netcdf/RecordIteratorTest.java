@@ -0,0 +1,134 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.algebra.G;
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.real.float32.Float32Algebra;
+import nom.bdezonia.zorbage.type.real.float32.Float32Member;
+import ucar.ma2.DataType;
+
+/**
+ * Checks that iterating records returns each record's values.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class RecordIteratorTest {
+
+	private static final int[] SHAPE = {6, 3, 5};
+	
+	private static final int RECORD = 15;
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testRecordsInOrder() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "records.nc", SHAPE, true, DataType.FLOAT);
+		
+		for (boolean prefetch : new boolean[] {false, true}) {
+			
+			try (RecordIterator<Float32Algebra,Float32Member> iter =
+					NetCDF.<Float32Algebra,Float32Member>readRecords(uri, Fixtures.name(DataType.FLOAT), prefetch))
+			{
+				assertNotNull(iter);
+				assertEquals(SHAPE[0], iter.numRecords());
+				
+				for (int r = 0; r < SHAPE[0]; r++) {
+					
+					check(iter.next(), r);
+					
+					assertEquals(r, iter.recordIndex());
+				}
+				
+				assertFalse(iter.hasNext());
+			}
+		}
+	}
+	
+	@Test
+	public void testClosingGivesBackThePooledFile() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "pooled.nc", SHAPE, true, DataType.FLOAT);
+		
+		try (NetcdfFilePool pool = new NetcdfFilePool(4)) {
+			
+			ReadOptions options = new ReadOptions();
+			options.setFilePool(pool);
+			
+			// stop part way with a prefetch outstanding
+			
+			try (RecordIterator<Float32Algebra,Float32Member> iter =
+					NetCDF.<Float32Algebra,Float32Member>readRecords(uri, Fixtures.name(DataType.FLOAT), true, options))
+			{
+				check(iter.next(), 0);
+			}
+			
+			assertEquals(1, pool.idleCount());
+			
+			try (RecordIterator<Float32Algebra,Float32Member> iter =
+					NetCDF.<Float32Algebra,Float32Member>readRecords(uri, Fixtures.name(DataType.FLOAT), true, options))
+			{
+				assertEquals(0, pool.idleCount());
+				
+				check(iter.next(), 0);
+				check(iter.next(), 1);
+			}
+			
+			assertEquals(1, pool.idleCount());
+		}
+	}
+	
+	// a record holds the ramp values r*RECORD up to (r+1)*RECORD. they are
+	//   checked as a set by their sum.
+	
+	private static void check(Tuple2<?, DimensionedDataSource<Float32Member>> data, int r) {
+		
+		assertEquals(RECORD, data.b().rawData().size());
+		
+		Float32Member val = G.FLT.construct();
+		
+		double sum = 0;
+		for (long i = 0; i < RECORD; i++) {
+			data.b().rawData().get(i, val);
+			sum += val.v();
+		}
+		
+		assertEquals(RECORD * (2.0 * r * RECORD + RECORD - 1) / 2, sum, 0);
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import nom.bdezonia.zorbage.data.DimensionedDataSource;
+import nom.bdezonia.zorbage.tuple.Tuple2;
+import nom.bdezonia.zorbage.type.string.FixedStringMember;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.ma2.Section;
+import ucar.nc2.Dimension;
+import ucar.nc2.Group;
+import ucar.nc2.NetcdfFile;
+import ucar.nc2.ProxyReader;
+import ucar.nc2.Variable;
+import ucar.nc2.util.CancelTask;
+
+/**
+ * Checks that String variables are sized without reading every value.
+ * The variable lives in an in memory file whose reader refuses to read
+ * the whole variable.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class StringWidthTest {
+
+	private static final String[] VALUES = {"a", "bb", "ccc", "dddd", "eeeeeeeeeeeeeeee", "f"};
+	
+	private static final URI SOURCE = URI.create("file:///memory/strings.nc");
+	
+	// serves sections only
+	
+	private static class SectionReader implements ProxyReader {
+
+		@Override
+		public Array reactiveRead(Variable client, CancelTask cancelTask) throws IOException {
+			throw new IOException("the whole variable was read");
+		}
+
+		@Override
+		public Array reactiveRead(Variable client, Section section, CancelTask cancelTask)
+			throws IOException, InvalidRangeException
+		{
+			Array values = Array.factory(DataType.STRING, new int[] {VALUES.length});
+			for (int i = 0; i < VALUES.length; i++) {
+				values.setObject(i, VALUES[i]);
+			}
+			return values.section(section.getRanges());
+		}
+	}
+	
+	private static Variable stringVariable() {
+		
+		Dimension x = new Dimension("x", VALUES.length);
+		
+		Group.Builder root = Group.builder().setName("").addDimension(x);
+		
+		root.addVariable(Variable.builder().setName("names").setDataType(DataType.STRING)
+							.setDimensions(Collections.singletonList(x)).setProxyReader(new SectionReader()));
+		
+		NetcdfFile file = NetcdfFile.builder().setRootGroup(root).setLocation(SOURCE.toString()).build();
+		
+		return file.findVariable("names");
+	}
+	
+	@Test
+	public void testSubsetReadsSizeToTheValuesRead() throws IOException, InvalidRangeException {
+		
+		Variable var = stringVariable();
+		
+		Tuple2<?, DimensionedDataSource<FixedStringMember>> data =
+				NetCDF.readVar(var, SOURCE, null, new Section(new int[] {1}, new int[] {3}), new ReadOptions());
+		
+		assertNotNull(data);
+		
+		DimensionedDataSource<FixedStringMember> ds = data.b();
+		
+		assertEquals(3, ds.rawData().size());
+		
+		FixedStringMember value = new FixedStringMember(16);
+		
+		for (int i = 0; i < 3; i++) {
+			ds.rawData().get(i, value);
+			assertEquals(VALUES[1+i], value.v());
+		}
+	}
+	
+	@Test
+	public void testStorageMadeUpFrontUsesTheOptionsWidth() throws IOException {
+		
+		Variable var = stringVariable();
+		
+		ReadOptions options = new ReadOptions();
+		
+		assertEquals(256, ((FixedStringMember) NetCDF.decoder(var, options).type).capacity());
+		
+		options.setStringWidth(40);
+		
+		assertEquals(40, ((FixedStringMember) NetCDF.decoder(var, options).type).capacity());
+		
+		assertEquals(40, NetCDF.stringWidth(var, options));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void testWidthMustBePositive() {
+		
+		new ReadOptions().setStringWidth(0);
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * zorbage-netcdf: code for using the NetCDF data file library to open files into zorbage data structures for further processing
+ *
+ * Copyright (C) 2020-2022 Barry DeZonia
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package nom.bdezonia.zorbage.netcdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import nom.bdezonia.zorbage.misc.DataBundle;
+import ucar.ma2.Array;
+import ucar.ma2.DataType;
+import ucar.ma2.InvalidRangeException;
+import ucar.nc2.write.NetcdfFormatWriter;
+
+/**
+ * Checks that variable filters choose which variables are read.
+ * 
+ * @author Barry DeZonia
+ *
+ */
+public class VariableFilterTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void testSkippedVariablesAreNeverRead() throws IOException {
+		
+		URI uri = Fixtures.classic(folder.getRoot().toPath(), "types.nc", new int[] {4, 5}, false,
+									DataType.FLOAT, DataType.DOUBLE, DataType.INT);
+		
+		Set<String> read = Collections.synchronizedSet(new HashSet<>());
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setVariableFilter(v -> v.getDataType() == DataType.FLOAT);
+		
+		options.setImportListener((source, variable, phase, nanos, bytes, allocatedBytes) -> {
+			if (phase == ImportListener.Phase.READ)
+				read.add(variable);
+		});
+		
+		DataBundle bundle = NetCDF.readAllDatasets(uri, options);
+		
+		assertEquals(1, bundle.flts.size());
+		
+		assertEquals(Collections.singleton(Fixtures.name(DataType.FLOAT)), read);
+	}
+	
+	@Test
+	public void testFiltersKeepCoordinateVariables() throws IOException {
+		
+		URI uri = withCoordinates(folder.getRoot().toPath());
+		
+		DataBundle all = NetCDF.readAllDatasets(uri, v -> true);
+		
+		assertEquals(2, all.flts.size());
+		
+		DataBundle named = NetCDF.readAllDatasets(uri, new HashSet<>(Arrays.asList("temp", "x")));
+		
+		assertEquals(2, named.flts.size());
+		
+		DataBundle one = NetCDF.readAllDatasets(uri, Collections.singleton("temp"));
+		
+		assertEquals(1, one.flts.size());
+	}
+	
+	@Test
+	public void testOptionsCanSkipCoordinateVariables() throws IOException {
+		
+		URI uri = withCoordinates(folder.getRoot().toPath());
+		
+		ReadOptions options = new ReadOptions();
+		
+		options.setVariableFilter(v -> true);
+		
+		options.setSkipCoordinateVariables(true);
+		
+		DataBundle bundle = NetCDF.readAllDatasets(uri, options);
+		
+		assertEquals(1, bundle.flts.size());
+		
+		assertTrue(bundle.flts.get(0).getName().contains("temp"));
+	}
+	
+	// a float variable on x and the coordinate variable of x
+	
+	private static URI withCoordinates(Path dir) throws IOException {
+		
+		Path path = dir.resolve("coords.nc");
+		
+		NetcdfFormatWriter.Builder builder = NetcdfFormatWriter.createNewNetcdf3(path.toString());
+		
+		builder.addDimension("x", 5);
+		builder.addVariable("x", DataType.FLOAT, "x");
+		builder.addVariable("temp", DataType.FLOAT, "x");
+		
+		try (NetcdfFormatWriter writer = builder.build()) {
+			
+			writer.write(writer.findVariable("x"), Array.makeArray(DataType.FLOAT, 5, 0, 1));
+			writer.write(writer.findVariable("temp"), Array.makeArray(DataType.FLOAT, 5, 10, 1));
+			
+		} catch (InvalidRangeException e) {
+			
+			throw new IOException(e);
+		}
+		
+		return path.toUri();
+	}
+}